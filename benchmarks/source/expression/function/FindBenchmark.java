@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import expression.IExpression;
+import expression.Literal;
+import main.BenchmarkWorkspace;
+import main.ITarget;
+import main.Match;
+import main.Target;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures Find walking a workspace and matching every file against a pattern or globs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindBenchmark {
+
+    @Param({"100"})
+    public int mDirectories;
+
+    @Param({"20"})
+    public int mFiles;
+
+    private File mRoot;
+    private Match mMatch;
+    private ITarget mTarget;
+
+    @Setup
+    public void setUp() throws Exception {
+        mRoot = BenchmarkWorkspace.create(mDirectories, mFiles);
+        mMatch = new Match(mRoot);
+        mMatch.mQuiet = true;
+        mTarget = new Target(mMatch, new File(mRoot, Match.MATCH));
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkWorkspace.delete(mRoot);
+    }
+
+    @Benchmark
+    public List<String> find() {
+        Map<String, IExpression> parameters = new HashMap<String, IExpression>();
+        parameters.put(Function.ANONYMOUS, new Literal(mMatch, mTarget, "."));
+        return configure(parameters);
+    }
+
+    @Benchmark
+    public List<String> findPattern() {
+        Map<String, IExpression> parameters = new HashMap<String, IExpression>();
+        parameters.put(Function.DIRECTORY, new Literal(mMatch, mTarget, "."));
+        parameters.put(Function.PATTERN, new Literal(mMatch, mTarget, ".*/source/.*\\.java"));
+        return configure(parameters);
+    }
+
+    @Benchmark
+    public List<String> findGlob() {
+        Map<String, IExpression> parameters = new HashMap<String, IExpression>();
+        parameters.put(Function.ANONYMOUS, new Literal(mMatch, mTarget, "."));
+        parameters.put(Function.INCLUDE, new Literal(mMatch, mTarget, "**/source/**/*.java"));
+        return configure(parameters);
+    }
+
+    private List<String> configure(Map<String, IExpression> parameters) {
+        Find find = new Find(mMatch, mTarget, parameters);
+        find.configure();
+        return find.getFiles();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package frontend;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import main.BenchmarkWorkspace;
+import main.ITarget;
+import main.Match;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lexing and parsing a match file declaring the given number of jar, test and property
+ * targets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontendBenchmark {
+
+    @Param({"10", "100"})
+    public int mTargets;
+
+    private File mRoot;
+    private File mFile;
+    private Match mMatch;
+
+    @Setup
+    public void setUp() throws Exception {
+        mRoot = BenchmarkWorkspace.create(0, 0);
+        mFile = new File(mRoot, Match.MATCH);
+        StringBuilder content = new StringBuilder("# Generated for benchmarking\n");
+        for (int i = 0; i < mTargets; i++) {
+            content.append(String.format("Set(\n    name = \"library%d\"\n    value = \"./libraries/library%d.jar\"\n)\n\n", i, i));
+            content.append(String.format("JavaJar(\n    name = \"Module%d\"\n    source = Find(\"module%d/source\")\n", i, i));
+            content.append(String.format("    main_class = \"main.Module%d\"\n    library = [\n        \"library%d\"\n    ]\n)\n\n", i, i));
+            content.append(String.format("JavaJUnit(\n    name = \"Module%dResult\"\n    library = [\n        \"Module%d\"\n    ]\n", i, i));
+            content.append(String.format("    main_class = \"main.Module%dTest\"\n)\n\n", i));
+        }
+        BenchmarkWorkspace.write(mFile, content.toString());
+        mMatch = new Match(mRoot);
+        mMatch.mQuiet = true;
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkWorkspace.delete(mRoot);
+    }
+
+    @Benchmark
+    public int lex() {
+        Lexer lexer = new Lexer(mMatch, Match.LEXEMS, mFile);
+        int tokens = 0;
+        do {
+            lexer.move();
+            tokens++;
+        } while (!lexer.currentIs(Category.EOF));
+        return tokens;
+    }
+
+    @Benchmark
+    public List<ITarget> parse() {
+        return new Parser(mMatch, new Lexer(mMatch, Match.LEXEMS, mFile)).parse();
+    }
+}
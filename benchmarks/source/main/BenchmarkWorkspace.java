@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Creates throwaway workspaces for the benchmarks to scan and search, under out/benchmarks in
+ * the working directory since Find expects workspaces below it.
+ */
+public final class BenchmarkWorkspace {
+
+    public static final String OUTPUT = "out/benchmarks";
+
+    private BenchmarkWorkspace() {}
+
+    /**
+     * Creates a workspace of nested directories, each holding some java sources and some other
+     * files.
+     */
+    public static File create(int directories, int files) throws IOException {
+        File parent = new File(OUTPUT).getAbsoluteFile();
+        parent.mkdirs();
+        File root = Files.createTempDirectory(parent.toPath(), "workspace").toFile();
+        for (int i = 0; i < directories; i++) {
+            File directory = new File(root, String.format("module%d/source/package%d", i % 10, i));
+            directory.mkdirs();
+            for (int j = 0; j < files; j++) {
+                String extension = j % 4 == 0 ? "txt" : "java";
+                write(new File(directory, String.format("File%d.%s", j, extension)), "");
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Writes the content to the file.
+     */
+    public static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Deletes the workspace.
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
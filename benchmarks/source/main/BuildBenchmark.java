@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Times clean, no-op and one file change builds of a workspace, such as one made by
+ * WorkspaceGenerator, breaking each build down into phases using its profile.
+ *
+ * Each build runs in a new JVM in the workspace, as a user would run it.
+ */
+public class BuildBenchmark {
+
+    public static final String PROFILE = "out/match/profile.json";
+    public static final String BUILD = "build";
+    public static final String TOTAL = "total";
+
+    private static final String[] PHASES = {TOTAL, Profile.SCAN, Profile.PARSE, Profile.CONFIGURE, BUILD};
+    private static final Pattern SPAN = Pattern.compile("\"cat\":\"(\\w+)\",\"ph\":\"X\",\"ts\":(\\d+),\"dur\":(\\d+)");
+
+    private final File mRoot;
+    private final String mClasspath;
+    private final List<String> mOptions;
+    private final long mTimeout;
+
+    /**
+     * @param timeout the number of seconds after which a build is considered hung.
+     */
+    public BuildBenchmark(File root, String classpath, List<String> options, long timeout) {
+        mRoot = root.getAbsoluteFile();
+        mClasspath = classpath;
+        mOptions = options;
+        mTimeout = timeout;
+    }
+
+    /**
+     * Runs each kind of build the given number of times.
+     *
+     * @return the median milliseconds of each phase, keyed by kind of build and then phase.
+     */
+    public Map<String, Map<String, Long>> run(int runs) throws Exception {
+        Map<String, List<Map<String, Long>>> results = new LinkedHashMap<String, List<Map<String, Long>>>();
+        for (String kind : new String[] {"clean", "no-op", "one file change"}) {
+            results.put(kind, new ArrayList<Map<String, Long>>());
+        }
+        for (int i = 0; i < runs; i++) {
+            BenchmarkWorkspace.delete(new File(mRoot, "out"));
+            results.get("clean").add(build());
+            results.get("no-op").add(build());
+            change();
+            results.get("one file change").add(build());
+        }
+        Map<String, Map<String, Long>> medians = new LinkedHashMap<String, Map<String, Long>>();
+        for (Map.Entry<String, List<Map<String, Long>>> result : results.entrySet()) {
+            Map<String, Long> median = new LinkedHashMap<String, Long>();
+            for (String phase : PHASES) {
+                List<Long> values = new ArrayList<Long>();
+                for (Map<String, Long> phases : result.getValue()) {
+                    values.add(phases.containsKey(phase) ? phases.get(phase) : 0);
+                }
+                Collections.sort(values);
+                median.put(phase, values.get(values.size() / 2));
+            }
+            medians.put(result.getKey(), median);
+        }
+        return medians;
+    }
+
+    /**
+     * Builds the workspace.
+     *
+     * @return the milliseconds taken by the whole build and each phase.
+     */
+    private Map<String, Long> build() throws Exception {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(mClasspath);
+        command.add(Match.class.getName());
+        command.add(".");
+        command.add("--" + Match.PROFILE);
+        command.add(PROFILE);
+        command.addAll(mOptions);
+        File log = File.createTempFile("build", ".log");
+        try {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).directory(mRoot).redirectErrorStream(true)
+                    .redirectOutput(log).start();
+            if (!process.waitFor(mTimeout, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IOException(String.format("build took over %ds:%n%s", mTimeout, new String(Files.readAllBytes(log.toPath()), "UTF-8")));
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException(String.format("build failed:%n%s", new String(Files.readAllBytes(log.toPath()), "UTF-8")));
+            }
+            Map<String, Long> phases = getPhases(new File(mRoot, PROFILE));
+            phases.put(TOTAL, (System.nanoTime() - start) / 1000000);
+            return phases;
+        } finally {
+            log.delete();
+        }
+    }
+
+    /**
+     * Reads the milliseconds spent in each phase from a profile written by Match.
+     */
+    static Map<String, Long> getPhases(File profile) throws IOException {
+        Map<String, Long> phases = new LinkedHashMap<String, Long>();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        Matcher matcher = SPAN.matcher(new String(Files.readAllBytes(profile.toPath()), "UTF-8"));
+        while (matcher.find()) {
+            String category = matcher.group(1);
+            long start = Long.parseLong(matcher.group(2));
+            long duration = Long.parseLong(matcher.group(3));
+            if (category.equals(Profile.TARGET)) {
+                first = Math.min(first, start);
+                last = Math.max(last, start + duration);
+            } else if (category.equals(Profile.SCAN) || category.equals(Profile.PARSE) || category.equals(Profile.CONFIGURE)) {
+                phases.put(category, duration / 1000);
+            }
+        }
+        if (first <= last) {
+            phases.put(BUILD, (last - first) / 1000);
+        }
+        return phases;
+    }
+
+    /**
+     * Edits a source file that every other layer of the workspace depends on.
+     */
+    private void change() throws IOException {
+        File file = WorkspaceGenerator.getChangeFile(mRoot);
+        String source = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        int end = source.lastIndexOf('}');
+        long change = System.nanoTime();
+        BenchmarkWorkspace.write(file, String.format("%s\n    public static long changed%d() {\n        return %dL;\n    }\n}\n",
+                source.substring(0, end), change, change));
+    }
+
+    /**
+     * Usage: BuildBenchmark &lt;workspace&gt; [--runs N] [--timeout SECONDS] [Match options]
+     */
+    public static void main(String args[]) throws Exception {
+        int runs = 3;
+        long timeout = 3600;
+        List<String> options = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--runs")) {
+                runs = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--timeout")) {
+                timeout = Long.parseLong(args[++i]);
+            } else {
+                options.add(args[i]);
+            }
+        }
+        String classpath = new File(Match.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        BuildBenchmark benchmark = new BuildBenchmark(new File(args[0]), classpath, options, timeout);
+        Map<String, Map<String, Long>> results = benchmark.run(runs);
+        StringBuilder header = new StringBuilder(String.format("%-16s", ""));
+        for (String phase : PHASES) {
+            header.append(String.format(" %9s", phase));
+        }
+        System.out.println(header);
+        for (Map.Entry<String, Map<String, Long>> result : results.entrySet()) {
+            StringBuilder line = new StringBuilder(String.format("%-16s", result.getKey()));
+            for (String phase : PHASES) {
+                line.append(String.format(" %7dms", result.getValue().get(phase)));
+            }
+            System.out.println(line);
+        }
+    }
+}
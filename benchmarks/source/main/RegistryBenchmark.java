@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the property and file registries under contention from concurrently building
+ * targets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RegistryBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final String[] mFiles = new String[COUNT];
+    private final String[] mKeys = new String[COUNT];
+    private Match mMatch;
+
+    @Setup
+    public void setUp() {
+        mMatch = new Match(null);
+        mMatch.mQuiet = true;
+        for (int i = 0; i < COUNT; i++) {
+            mFiles[i] = String.format("./out/java/jar/Module%d.jar", i);
+            mKeys[i] = String.format("Module%d", i);
+            mMatch.addFile(mFiles[i]);
+            mMatch.provideFile(mFiles[i]);
+            mMatch.setProperty(mKeys[i], mFiles[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int mNext;
+        int next() {
+            mNext = (mNext + 1) & (COUNT - 1);
+            return mNext;
+        }
+    }
+
+    @Benchmark
+    public void awaitFile(Cursor cursor) {
+        mMatch.awaitFile(mFiles[cursor.next()]);
+    }
+
+    @Benchmark
+    public void provideFile(Cursor cursor) {
+        mMatch.provideFile(mFiles[cursor.next()]);
+    }
+
+    @Benchmark
+    public String getProperty(Cursor cursor) {
+        return mMatch.getProperty(mKeys[cursor.next()]);
+    }
+
+    @Benchmark
+    public void setProperty(Cursor cursor) {
+        int next = cursor.next();
+        mMatch.setProperty(mKeys[next], mFiles[next]);
+    }
+}
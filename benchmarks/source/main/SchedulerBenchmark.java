@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import expression.IExpression;
+import expression.function.Function;
+import expression.function.IFunction;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building a synthetic graph of targets that do no work besides waiting for their
+ * dependencies' files and providing their own, so only the scheduling overhead is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"10"})
+    public int mLayers;
+
+    @Param({"10", "50"})
+    public int mWidth;
+
+    @Param({"3"})
+    public int mFanIn;
+
+    private Match mMatch;
+    private List<ITarget> mTargets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mMatch = new Match(null);
+        mMatch.mQuiet = true;
+        mTargets = new ArrayList<ITarget>();
+        for (int layer = 0; layer < mLayers; layer++) {
+            for (int i = 0; i < mWidth; i++) {
+                List<String> dependencies = new ArrayList<String>();
+                for (int j = 0; layer > 0 && j < mFanIn; j++) {
+                    dependencies.add(getFile(layer - 1, (i + j) % mWidth));
+                }
+                mTargets.add(new SyntheticTarget(mMatch, getFile(layer, i), dependencies));
+            }
+        }
+        for (ITarget target : mTargets) {
+            target.configure();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        mMatch.reset(mTargets);
+    }
+
+    @Benchmark
+    public void build() {
+        mMatch.build(mTargets);
+    }
+
+    private static String getFile(int layer, int index) {
+        return String.format("./out/layer%d/target%d", layer, index);
+    }
+
+    private static class SyntheticTarget implements ITarget {
+
+        private final IMatch mMatch;
+        private final String mFile;
+        private final List<String> mDependencies;
+        private final IFunction mFunction;
+
+        SyntheticTarget(IMatch match, String file, List<String> dependencies) {
+            mMatch = match;
+            mFile = file;
+            mDependencies = dependencies;
+            // Does nothing, but lets Match reset the target between builds
+            mFunction = new Function(match, this, new HashMap<String, IExpression>()) {};
+        }
+
+        @Override
+        public File getFile() {
+            return new File(Match.MATCH);
+        }
+
+        @Override
+        public int getLine() {
+            return 0;
+        }
+
+        @Override
+        public String getName() {
+            return mFile;
+        }
+
+        @Override
+        public List<String> getDependencies() {
+            return mDependencies;
+        }
+
+        @Override
+        public IFunction getFunction() {
+            return mFunction;
+        }
+
+        @Override
+        public void setFunction(IFunction function) {}
+
+        @Override
+        public void configure() {
+            mMatch.addFile(mFile);
+        }
+
+        @Override
+        public void build() {
+            for (String dependency : mDependencies) {
+                mMatch.awaitFile(dependency);
+            }
+            mMatch.provideFile(mFile);
+        }
+    }
+}
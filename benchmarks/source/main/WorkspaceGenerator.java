@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates a workspace of java modules for benchmarking Match at scale.
+ *
+ * Modules are spread across match files and arranged in layers, each module depending on
+ * modules in the layer below it. Every module is a JavaJar, optionally with a test JavaJar
+ * and a JavaJUnit target running its tests.
+ */
+public class WorkspaceGenerator {
+
+    private int mMatchFiles = 10;
+    private int mModules = 100;
+    private int mSources = 10;
+    private int mFanIn = 3;
+    private int mDepth = 5;
+    private boolean mTests = true;
+    private String mLibraries = new File("libraries").getAbsolutePath();
+
+    /**
+     * Applies the command line options.
+     */
+    public void setOptions(List<String> options) {
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (option.equals("--no-tests")) {
+                mTests = false;
+            } else if (option.equals("--libraries")) {
+                mLibraries = new File(options.get(++i)).getAbsolutePath();
+            } else if (i + 1 < options.size() && option.startsWith("--")) {
+                int value = Integer.parseInt(options.get(++i));
+                if (option.equals("--match-files")) {
+                    mMatchFiles = value;
+                } else if (option.equals("--modules")) {
+                    mModules = value;
+                } else if (option.equals("--sources")) {
+                    mSources = value;
+                } else if (option.equals("--fan-in")) {
+                    mFanIn = value;
+                } else if (option.equals("--depth")) {
+                    mDepth = value;
+                } else {
+                    throw new IllegalArgumentException(String.format("unknown option %s", option));
+                }
+            } else {
+                throw new IllegalArgumentException(String.format("unknown option %s", option));
+            }
+        }
+        mMatchFiles = Math.max(1, Math.min(mMatchFiles, mModules));
+        mDepth = Math.max(1, Math.min(mDepth, mModules));
+        mSources = Math.max(1, mSources);
+    }
+
+    /**
+     * Writes the workspace under the given root, which must not exist yet.
+     */
+    public void generate(File root) throws IOException {
+        if (root.exists()) {
+            throw new IOException(String.format("%s already exists", root));
+        }
+        root.mkdirs();
+        List<Set<Integer>> dependencies = new ArrayList<Set<Integer>>();
+        for (int i = 0; i < mModules; i++) {
+            dependencies.add(getDependencies(i));
+        }
+        // Match only knows about files in the workspace, so the libraries are copied in
+        File directory = new File(root, "libraries");
+        directory.mkdirs();
+        StringBuilder libraries = new StringBuilder();
+        for (String[] library : new String[][] {{"junit", "junit-4.12.jar"}, {"hamcrest", "hamcrest-core-1.3.jar"}, {"mockito", "mockito-all-1.10.19.jar"}}) {
+            Files.copy(new File(mLibraries, library[1]).toPath(), new File(directory, library[1]).toPath());
+            libraries.append(String.format("Set(\n    name = \"%s\"\n    value = \"./libraries/%s\"\n)\n\n", library[0], library[1]));
+        }
+        BenchmarkWorkspace.write(new File(root, Match.MATCH), libraries.toString());
+        List<StringBuilder> matches = new ArrayList<StringBuilder>();
+        for (int i = 0; i < mMatchFiles; i++) {
+            matches.add(new StringBuilder());
+        }
+        for (int i = 0; i < mModules; i++) {
+            File group = new File(root, getGroup(i));
+            generateSources(group, i, dependencies.get(i));
+            matches.get(i % mMatchFiles).append(getTargets(i, dependencies.get(i), getClasspath(i, dependencies)));
+        }
+        for (int i = 0; i < mMatchFiles; i++) {
+            BenchmarkWorkspace.write(new File(new File(root, String.format("group%d", i)), Match.MATCH), matches.get(i).toString());
+        }
+    }
+
+    /**
+     * @return the source file a one file change edits, in the module every layer depends on.
+     */
+    public static File getChangeFile(File root) {
+        return new File(root, "group0/module0/source/module0/Class0.java");
+    }
+
+    private int getLayer(int module) {
+        return module * mDepth / mModules;
+    }
+
+    private Set<Integer> getDependencies(int module) {
+        Set<Integer> dependencies = new TreeSet<Integer>();
+        int layer = getLayer(module);
+        if (layer == 0) {
+            return dependencies;
+        }
+        List<Integer> below = new ArrayList<Integer>();
+        for (int i = 0; i < module; i++) {
+            if (getLayer(i) == layer - 1) {
+                below.add(i);
+            }
+        }
+        for (int i = 0; i < Math.min(mFanIn, below.size()); i++) {
+            dependencies.add(below.get((module + i) % below.size()));
+        }
+        return dependencies;
+    }
+
+    private static Set<Integer> getClasspath(int module, List<Set<Integer>> dependencies) {
+        Set<Integer> classpath = new TreeSet<Integer>();
+        List<Integer> pending = new ArrayList<Integer>(dependencies.get(module));
+        while (!pending.isEmpty()) {
+            int dependency = pending.remove(pending.size() - 1);
+            if (classpath.add(dependency)) {
+                pending.addAll(dependencies.get(dependency));
+            }
+        }
+        return classpath;
+    }
+
+    private String getGroup(int module) {
+        return String.format("group%d", module % mMatchFiles);
+    }
+
+    private void generateSources(File group, int module, Set<Integer> dependencies) throws IOException {
+        String name = String.format("module%d", module);
+        File sources = new File(group, String.format("%s/source/%s", name, name));
+        sources.mkdirs();
+        for (int i = 0; i < mSources; i++) {
+            StringBuilder value = new StringBuilder(Integer.toString(i));
+            if (i > 0) {
+                value.append(String.format(" + Class%d.value()", i - 1));
+            } else {
+                for (int dependency : dependencies) {
+                    value.append(String.format(" + module%d.Class0.value()", dependency));
+                }
+            }
+            BenchmarkWorkspace.write(new File(sources, String.format("Class%d.java", i)), String.format(
+                    "package %s;\n\npublic class Class%d {\n\n    public static int value() {\n        return %s;\n    }\n}\n",
+                    name, i, value));
+        }
+        if (mTests) {
+            File tests = new File(group, String.format("%s/tests/%s", name, name));
+            tests.mkdirs();
+            BenchmarkWorkspace.write(new File(tests, "ClassTest.java"), String.format(
+                    "package %s;\n\nimport org.junit.Assert;\nimport org.junit.Test;\n\npublic class ClassTest {\n\n"
+                    + "    @Test\n    public void value() {\n        Assert.assertTrue(Class%d.value() >= 0);\n    }\n}\n",
+                    name, mSources - 1));
+        }
+    }
+
+    private String getTargets(int module, Set<Integer> dependencies, Set<Integer> classpath) {
+        String name = String.format("Module%d", module);
+        StringBuilder targets = new StringBuilder();
+        targets.append(String.format("JavaJar(\n    name = \"%s\"\n    source = Find(\"module%d/source\")\n", name, module));
+        targets.append(String.format("    main_class = \"module%d.Class0\"\n", module));
+        targets.append(getLibraries(dependencies, new String[0]));
+        targets.append(")\n\n");
+        if (mTests) {
+            targets.append(String.format("JavaJar(\n    name = \"%sTest\"\n    source = Find(\"module%d/tests\")\n", name, module));
+            targets.append(String.format("    main_class = \"module%d.ClassTest\"\n", module));
+            targets.append(getLibraries(new TreeSet<Integer>(), new String[] {name, "junit"}));
+            targets.append(")\n\n");
+            targets.append(String.format("JavaJUnit(\n    name = \"%sResult\"\n", name));
+            targets.append(getLibraries(classpath, new String[] {name + "Test", name}));
+            targets.append(String.format("    main_class = \"module%d.ClassTest\"\n)\n\n", module));
+        }
+        return targets.toString();
+    }
+
+    private static String getLibraries(Set<Integer> modules, String[] names) {
+        if (modules.isEmpty() && names.length == 0) {
+            return "";
+        }
+        StringBuilder libraries = new StringBuilder("    library = [\n");
+        for (String name : names) {
+            libraries.append(String.format("        \"%s\"\n", name));
+        }
+        for (int module : modules) {
+            libraries.append(String.format("        \"Module%d\"\n", module));
+        }
+        return libraries.append("    ]\n").toString();
+    }
+
+    /**
+     * Usage: WorkspaceGenerator &lt;root&gt; [--match-files N] [--modules N] [--sources N]
+     * [--fan-in N] [--depth N] [--no-tests] [--libraries DIRECTORY]
+     */
+    public static void main(String args[]) throws IOException {
+        WorkspaceGenerator generator = new WorkspaceGenerator();
+        List<String> options = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            options.add(args[i]);
+        }
+        generator.setOptions(options);
+        generator.generate(new File(args[0]));
+    }
+}
@@ -0,0 +1,12 @@
+package module0;
+
+public class Class0 {
+
+    public static int value() {
+        return 0;
+    }
+
+    public static long changed2834608685376() {
+        return 2834608685376L;
+    }
+}
@@ -0,0 +1,8 @@
+package module3;
+
+public class Class0 {
+
+    public static int value() {
+        return 0;
+    }
+}
@@ -0,0 +1,8 @@
+package module3;
+
+public class Class7 {
+
+    public static int value() {
+        return 7 + Class6.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module3;
+
+public class Class9 {
+
+    public static int value() {
+        return 9 + Class8.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module6;
+
+public class Class0 {
+
+    public static int value() {
+        return 0 + module0.Class0.value() + module2.Class0.value() + module3.Class0.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module6;
+
+public class Class7 {
+
+    public static int value() {
+        return 7 + Class6.value();
+    }
+}
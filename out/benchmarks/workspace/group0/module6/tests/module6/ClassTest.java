@@ -0,0 +1,12 @@
+package module6;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClassTest {
+
+    @Test
+    public void value() {
+        Assert.assertTrue(Class9.value() >= 0);
+    }
+}
@@ -0,0 +1,8 @@
+package module9;
+
+public class Class0 {
+
+    public static int value() {
+        return 0 + module5.Class0.value() + module6.Class0.value() + module7.Class0.value();
+    }
+}
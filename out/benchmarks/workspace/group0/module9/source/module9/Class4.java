@@ -0,0 +1,8 @@
+package module9;
+
+public class Class4 {
+
+    public static int value() {
+        return 4 + Class3.value();
+    }
+}
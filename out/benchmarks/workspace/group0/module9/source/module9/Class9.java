@@ -0,0 +1,8 @@
+package module9;
+
+public class Class9 {
+
+    public static int value() {
+        return 9 + Class8.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module10;
+
+public class Class5 {
+
+    public static int value() {
+        return 5 + Class4.value();
+    }
+}
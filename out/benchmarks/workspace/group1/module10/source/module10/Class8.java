@@ -0,0 +1,8 @@
+package module10;
+
+public class Class8 {
+
+    public static int value() {
+        return 8 + Class7.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module4;
+
+public class Class0 {
+
+    public static int value() {
+        return 0 + module0.Class0.value() + module1.Class0.value() + module2.Class0.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module4;
+
+public class Class3 {
+
+    public static int value() {
+        return 3 + Class2.value();
+    }
+}
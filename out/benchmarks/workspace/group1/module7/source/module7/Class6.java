@@ -0,0 +1,8 @@
+package module7;
+
+public class Class6 {
+
+    public static int value() {
+        return 6 + Class5.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module11;
+
+public class Class0 {
+
+    public static int value() {
+        return 0 + module4.Class0.value() + module5.Class0.value() + module7.Class0.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module2;
+
+public class Class1 {
+
+    public static int value() {
+        return 1 + Class0.value();
+    }
+}
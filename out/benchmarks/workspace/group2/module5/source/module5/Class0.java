@@ -0,0 +1,8 @@
+package module5;
+
+public class Class0 {
+
+    public static int value() {
+        return 0 + module1.Class0.value() + module2.Class0.value() + module3.Class0.value();
+    }
+}
@@ -0,0 +1,8 @@
+package module5;
+
+public class Class7 {
+
+    public static int value() {
+        return 7 + Class6.value();
+    }
+}
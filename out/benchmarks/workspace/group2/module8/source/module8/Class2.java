@@ -0,0 +1,8 @@
+package module8;
+
+public class Class2 {
+
+    public static int value() {
+        return 2 + Class1.value();
+    }
+}
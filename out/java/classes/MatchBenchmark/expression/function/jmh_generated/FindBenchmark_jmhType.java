@@ -0,0 +1,4 @@
+package expression.function.jmh_generated;
+public class FindBenchmark_jmhType extends FindBenchmark_jmhType_B3 {
+}
+
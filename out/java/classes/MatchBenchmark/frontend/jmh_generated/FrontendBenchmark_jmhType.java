@@ -0,0 +1,4 @@
+package frontend.jmh_generated;
+public class FrontendBenchmark_jmhType extends FrontendBenchmark_jmhType_B3 {
+}
+
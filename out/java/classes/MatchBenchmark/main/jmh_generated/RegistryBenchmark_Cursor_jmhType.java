@@ -0,0 +1,4 @@
+package main.jmh_generated;
+public class RegistryBenchmark_Cursor_jmhType extends RegistryBenchmark_Cursor_jmhType_B3 {
+}
+
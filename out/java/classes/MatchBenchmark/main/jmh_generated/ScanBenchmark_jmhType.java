@@ -0,0 +1,4 @@
+package main.jmh_generated;
+public class ScanBenchmark_jmhType extends ScanBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package main.jmh_generated;
+public class SchedulerBenchmark_jmhType extends SchedulerBenchmark_jmhType_B3 {
+}
+
@@ -19,12 +19,20 @@ import main.IMatch;
 import main.ITarget;
 import main.Utilities;
 
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Resolves each value once per build; callers on any thread share the result, which is
+ * published through a volatile field after it has been computed under a lock.
+ */
 public abstract class Expression implements IExpression {
 
     protected IMatch mMatch;
     protected ITarget mTarget;
+    private final Object mLock = new Object();
+    private volatile String mValue;
+    private volatile List<String> mValues;
 
     public Expression(IMatch match, ITarget target) {
         mMatch = match;
@@ -37,11 +45,62 @@ public abstract class Expression implements IExpression {
     @Override
     public void configure() {}
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String resolve() {
+        String value = mValue;
+        if (value == null) {
+            synchronized (mLock) {
+                value = mValue;
+                if (value == null) {
+                    value = evaluate();
+                    mValue = value;
+                }
+            }
+        }
+        return value;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public List<String> resolveList() {
+        List<String> values = mValues;
+        if (values == null) {
+            synchronized (mLock) {
+                values = mValues;
+                if (values == null) {
+                    values = Collections.unmodifiableList(evaluateList());
+                    mValues = values;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        synchronized (mLock) {
+            mValue = null;
+            mValues = null;
+        }
+    }
+
+    /**
+     * Computes the value returned by resolve().
+     */
+    protected abstract String evaluate();
+
+    /**
+     * Computes the values returned by resolveList(), by default the single resolved value.
+     */
+    protected List<String> evaluateList() {
         return Utilities.newList(resolve());
     }
 
@@ -31,11 +31,26 @@ public class ExpressionList extends Expression {
         mElements = elements;
     }
 
+    public List<IExpression> getElements() {
+        return mElements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        for (IExpression element : mElements) {
+            element.reset();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public String resolve() {
+    protected String evaluate() {
         return Utilities.join(" ", resolveList());
     }
 
@@ -43,7 +58,7 @@ public class ExpressionList extends Expression {
      * {@inheritDoc}
      */
     @Override
-    public List<String> resolveList() {
+    protected List<String> evaluateList() {
         List<String> values = new ArrayList<String>();
         for (IExpression element : mElements) {
             values.addAll(element.resolveList());
@@ -33,4 +33,9 @@ public interface IExpression {
      * Resolves the expression to a list of strings.
      */
     List<String> resolveList();
+
+    /**
+     * Forgets the resolved values, so the next build resolves them again.
+     */
+    void reset();
 }
@@ -31,7 +31,7 @@ public class Literal extends Expression {
      * {@inheritDoc}
      */
     @Override
-    public String resolve() {
+    protected String evaluate() {
         return mValue;
     }
 }
@@ -16,7 +16,6 @@
 package expression.function;
 
 import expression.IExpression;
-import expression.Literal;
 import main.IMatch;
 import main.ITarget;
 
@@ -30,16 +29,27 @@ public class Find extends Function {
 
     private IExpression mDirectory;
     private IExpression mPattern;
+    private IExpression mInclude;
+    private IExpression mExclude;
     private List<String> mFiles = new ArrayList<String>();
+    private List<String> mDirectories = new ArrayList<String>();
 
     public Find(IMatch match, ITarget target, Map<String, IExpression> parameters) {
         super(match, target, parameters);
         if (hasParameter(DIRECTORY)) {
             mDirectory = getParameter(DIRECTORY);
-            mPattern = getParameter(PATTERN);
+            if (hasParameter(PATTERN)) {
+                mPattern = getParameter(PATTERN);
+            }
         } else {
             mDirectory = getParameter(ANONYMOUS);
         }
+        if (hasParameter(INCLUDE)) {
+            mInclude = getParameter(INCLUDE);
+        }
+        if (hasParameter(EXCLUDE)) {
+            mExclude = getParameter(EXCLUDE);
+        }
     }
 
     /**
@@ -51,32 +61,61 @@ public class Find extends Function {
         File root = mTarget.getFile().getParentFile();
         File directory = new File(root, mDirectory.resolve());
         String path = directory.getAbsolutePath().substring(index);
-        String pattern = mPattern == null ? ".*" : mPattern.resolve();
-        scanFiles(directory, path, mFiles, Pattern.compile(pattern));
+        Pattern pattern = mPattern == null ? null : Pattern.compile(mPattern.resolve());
+        Glob glob = new Glob(resolveGlobs(mInclude), resolveGlobs(mExclude));
+        scanFiles(directory, path, mFiles, mDirectories, glob, glob.getRoot(), pattern);
+    }
+
+    /**
+     * @return the files found when this function was configured.
+     */
+    public List<String> getFiles() {
+        return mFiles;
+    }
+
+    /**
+     * Sets the files found, instead of configuring this function.
+     */
+    public void setFiles(List<String> files) {
+        mFiles = files;
+        reset();
+    }
+
+    /**
+     * @return the directories scanned when this function was configured.
+     */
+    public List<String> getDirectories() {
+        return mDirectories;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public List<String> resolveList() {
-        List<String> files = new ArrayList<String>();
-        for (String file : mFiles) {
-            mMatch.awaitFile(file);
-            files.add(new Literal(mMatch, mTarget, file).resolve());
-        }
-        return files;
+    protected List<String> evaluateList() {
+        mMatch.awaitFiles(mFiles);
+        return mFiles;
+    }
+
+    private static List<String> resolveGlobs(IExpression globs) {
+        return globs == null ? new ArrayList<String>() : globs.resolveList();
     }
 
-    private static void scanFiles(File directory, String path, List<String> files, Pattern pattern) {
+    private static void scanFiles(File directory, String path, List<String> files, List<String> directories, Glob glob, Glob.State state, Pattern pattern) {
+        directories.add(directory.getPath());
         for (File file : directory.listFiles()) {
-            String fullname = String.format("%s/%s", path, file.getName());
+            String name = file.getName();
+            String fullname = String.format("%s/%s", path, name);
             if (file.isFile()) {
-                if (pattern.matcher(fullname).matches()) {
+                if (glob.matches(state, name) && (pattern == null || pattern.matcher(fullname).matches())) {
                     files.add(fullname);
                 }
             } else {
-                scanFiles(file, fullname, files, pattern);
+                // Subtrees that can't hold a match aren't walked, or watched for changes
+                Glob.State child = glob.getDirectory(state, name);
+                if (child != null) {
+                    scanFiles(file, fullname, files, directories, glob, child, pattern);
+                }
             }
         }
     }
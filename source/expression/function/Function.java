@@ -16,14 +16,17 @@
 package expression.function;
 
 import expression.Expression;
+import expression.ExpressionList;
 import expression.IExpression;
+import expression.Literal;
 import main.IMatch;
 import main.ITarget;
 
 import java.io.File;
-import java.lang.reflect.Constructor;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public abstract class Function extends Expression implements IFunction {
@@ -31,14 +34,21 @@ public abstract class Function extends Expression implements IFunction {
     public static final String ANONYMOUS = "_";
     public static final String CLASS_OUTPUT = "./out/java/classes";
     public static final String DIRECTORY = "directory";
+    public static final String EXCLUDE = "exclude";
+    public static final String INCLUDE = "include";
     public static final String JAR_OUTPUT = "./out/java/jar";
     public static final String LIBRARY = "library";
     public static final String MAIN_CLASS = "main_class";
+    public static final String MODE = "mode";
     public static final String NAME = "name";
     public static final String PATTERN = "pattern";
+    public static final String RECYCLE = "recycle";
+    public static final String SHARDS = "shards";
     public static final String SOURCE = "source";
     public static final String VALUE = "value";
 
+    private static final FunctionRegistry REGISTRY = FunctionRegistry.load();
+
     private Map<String, IExpression> mParameters = new HashMap<String, IExpression>();
 
     public Function(IMatch match, ITarget target, Map<String, IExpression> parameters) {
@@ -50,11 +60,22 @@ public abstract class Function extends Expression implements IFunction {
      * {@inheritDoc}
      */
     @Override
-    public String resolve() {
+    protected String evaluate() {
         mMatch.error("Function does not resolve to a single String");
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        for (IExpression parameter : mParameters.values()) {
+            parameter.reset();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -75,12 +96,52 @@ public abstract class Function extends Expression implements IFunction {
         return parameter;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, IExpression> getParameters() {
+        return mParameters;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+        IExpression name = mParameters.get(NAME);
+        return name instanceof Literal ? name.resolve() : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getDependencies() {
+        List<String> dependencies = new ArrayList<String>();
+        for (Map.Entry<String, IExpression> parameter : mParameters.entrySet()) {
+            addDependencies(parameter.getKey().equals(LIBRARY), parameter.getValue(), dependencies);
+        }
+        return dependencies;
+    }
+
+    private static void addDependencies(boolean library, IExpression expression, List<String> dependencies) {
+        if (expression instanceof IFunction) {
+            dependencies.addAll(((IFunction) expression).getDependencies());
+        } else if (expression instanceof ExpressionList) {
+            for (IExpression element : ((ExpressionList) expression).getElements()) {
+                addDependencies(library, element, dependencies);
+            }
+        } else if (library && expression instanceof Literal) {
+            // Libraries are named by the property their target sets
+            dependencies.add(expression.resolve());
+        }
+    }
+
     public static Function getFunction(String name, IMatch match, ITarget target, Map<String, IExpression> parameters) {
         try {
-            Class<?> clazz = Class.forName(String.format("expression.function.%s", name));
-            Constructor<?> constructor = clazz.getDeclaredConstructor(IMatch.class, ITarget.class, Map.class);
-            return (Function) constructor.newInstance(match, target, parameters);
-        } catch (Exception e) {
+            return REGISTRY.newFunction(name, match, target, parameters);
+        } catch (ReflectiveOperationException e) {
             match.error(new Exception(String.format("couldn't load function \"%s\"", name), e));
             return null;
         }
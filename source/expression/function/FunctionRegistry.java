@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import expression.IExpression;
+import main.IMatch;
+import main.ITarget;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps function names to a cached constructor handle, so creating a function at each call site
+ * costs a map lookup rather than a class lookup and reflection.
+ *
+ * The built in functions and those of any IFunctionProvider are registered up front. Any other
+ * name is looked up once in the expression.function package, which is how functions added to
+ * that package are found.
+ */
+public class FunctionRegistry {
+
+    private static final String PACKAGE = "expression.function.%s";
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class, IMatch.class, ITarget.class, Map.class);
+    private static final MethodType FACTORY = MethodType.methodType(Function.class, IMatch.class, ITarget.class, Map.class);
+
+    private final ConcurrentMap<String, MethodHandle> mFactories = new ConcurrentHashMap<String, MethodHandle>();
+
+    /**
+     * Creates a registry of the built in functions and the functions of the given providers.
+     */
+    public FunctionRegistry(Iterable<IFunctionProvider> providers) throws ReflectiveOperationException {
+        for (Class<? extends Function> clazz : getBuiltins()) {
+            register(clazz);
+        }
+        for (IFunctionProvider provider : providers) {
+            for (Class<? extends Function> clazz : provider.getFunctions()) {
+                register(clazz);
+            }
+        }
+    }
+
+    /**
+     * @return a registry of the built in functions and those of the providers on the classpath.
+     */
+    public static FunctionRegistry load() {
+        try {
+            return new FunctionRegistry(ServiceLoader.load(IFunctionProvider.class, Function.class.getClassLoader()));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds the given function, called by its simple class name.
+     */
+    public void register(Class<? extends Function> clazz) throws ReflectiveOperationException {
+        mFactories.put(clazz.getSimpleName(), getFactory(clazz));
+    }
+
+    /**
+     * @return true iff a function with the given name has been registered or looked up.
+     */
+    public boolean contains(String name) {
+        return mFactories.containsKey(name);
+    }
+
+    /**
+     * Creates a new instance of the named function.
+     */
+    public Function newFunction(String name, IMatch match, ITarget target, Map<String, IExpression> parameters) throws ReflectiveOperationException {
+        MethodHandle factory = getFactory(name);
+        try {
+            return (Function) factory.invokeExact(match, target, parameters);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private MethodHandle getFactory(String name) throws ReflectiveOperationException {
+        MethodHandle factory = mFactories.get(name);
+        if (factory == null) {
+            Class<?> clazz = Class.forName(String.format(PACKAGE, name));
+            if (!Function.class.isAssignableFrom(clazz)) {
+                throw new ClassNotFoundException(String.format("%s is not a function", clazz.getName()));
+            }
+            factory = getFactory(clazz.asSubclass(Function.class));
+            MethodHandle existing = mFactories.putIfAbsent(name, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return factory;
+    }
+
+    private static MethodHandle getFactory(Class<? extends Function> clazz) throws ReflectiveOperationException {
+        return MethodHandles.lookup().findConstructor(clazz, CONSTRUCTOR).asType(FACTORY);
+    }
+
+    private static List<Class<? extends Function>> getBuiltins() {
+        List<Class<? extends Function>> builtins = new ArrayList<Class<? extends Function>>();
+        builtins.add(Find.class);
+        builtins.add(Get.class);
+        builtins.add(GetFile.class);
+        builtins.add(JavaJar.class);
+        builtins.add(JavaJUnit.class);
+        builtins.add(Set.class);
+        builtins.add(SetFile.class);
+        return builtins;
+    }
+}
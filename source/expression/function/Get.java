@@ -19,6 +19,7 @@ import expression.IExpression;
 import expression.Literal;
 import main.IMatch;
 import main.ITarget;
+import java.util.List;
 import java.util.Map;
 
 public class Get extends Function {
@@ -39,7 +40,17 @@ public class Get extends Function {
      * {@inheritDoc}
      */
     @Override
-    public String resolve() {
+    protected String evaluate() {
         return mMatch.getProperty(mKey);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getDependencies() {
+        List<String> dependencies = super.getDependencies();
+        dependencies.add(mKey);
+        return dependencies;
+    }
 }
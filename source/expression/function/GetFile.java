@@ -39,7 +39,7 @@ public class GetFile extends Get {
      * {@inheritDoc}
      */
     @Override
-    public String resolve() {
+    protected String evaluate() {
         String file = mMatch.getProperty(mKey);
         mMatch.awaitFile(file);
         return file;
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches paths relative to a directory against include and exclude globs.
+ *
+ * Each name in a glob may use "*" for any characters, "?" for one character, "[abc]" or "[!abc]"
+ * for a character class and "{a,b}" for alternatives, while "**" matches any number of
+ * directories. A glob ending in "/" matches everything under the directory it names. A path
+ * matches if it matches any include, or there are no includes, and matches no exclude.
+ *
+ * The globs are compiled into an automaton that is stepped one name at a time as a directory tree
+ * is walked, so a directory is skipped entirely when no include could match anything under it, or
+ * an exclude matches the directory itself or everything under it.
+ */
+public class Glob {
+
+    private static final String ANY = "**";
+
+    private final Automaton mIncludes;
+    private final Automaton mExcludes;
+
+    public Glob(List<String> includes, List<String> excludes) {
+        List<String> all = new ArrayList<String>(includes);
+        if (all.isEmpty()) {
+            all.add(ANY);
+        }
+        mIncludes = new Automaton(all);
+        mExcludes = new Automaton(excludes);
+    }
+
+    /**
+     * @return the state of the directory the paths are relative to.
+     */
+    public State getRoot() {
+        return new State(mIncludes.getStart(), mExcludes.getStart());
+    }
+
+    /**
+     * @return the state of the named directory in the given directory, or null if nothing under it
+     * can match.
+     */
+    public State getDirectory(State parent, String name) {
+        BitSet includes = mIncludes.step(parent.mIncludes, name);
+        BitSet excludes = mExcludes.step(parent.mExcludes, name);
+        if (!mIncludes.isLive(includes) || mExcludes.isCovering(excludes)) {
+            return null;
+        }
+        return new State(includes, excludes);
+    }
+
+    /**
+     * @return true iff the named file in the given directory matches.
+     */
+    public boolean matches(State parent, String name) {
+        return mIncludes.isAccepting(mIncludes.step(parent.mIncludes, name))
+                && !mExcludes.isAccepting(mExcludes.step(parent.mExcludes, name));
+    }
+
+    /**
+     * @return true iff the given path, relative to the root, matches.
+     */
+    public boolean matches(String path) {
+        String[] names = path.split("/");
+        State state = getRoot();
+        for (int i = 0; i < names.length - 1 && state != null; i++) {
+            state = getDirectory(state, names[i]);
+        }
+        return state != null && matches(state, names[names.length - 1]);
+    }
+
+    /**
+     * The globs that could still match below a directory.
+     */
+    public static final class State {
+
+        private final BitSet mIncludes;
+        private final BitSet mExcludes;
+
+        private State(BitSet includes, BitSet excludes) {
+            mIncludes = includes;
+            mExcludes = excludes;
+        }
+    }
+
+    /**
+     * A nondeterministic automaton over names, with one position per name of each glob followed by
+     * the position reached when the glob has matched.
+     */
+    private static final class Automaton {
+
+        private final List<String> mLiterals = new ArrayList<String>();
+        private final List<Pattern> mPatterns = new ArrayList<Pattern>();
+        private final BitSet mAny = new BitSet();
+        private final BitSet mAccept = new BitSet();
+        private final BitSet mCovering = new BitSet();
+        private final BitSet mStart = new BitSet();
+
+        Automaton(List<String> globs) {
+            for (String glob : globs) {
+                mStart.set(mLiterals.size());
+                for (String name : split(glob)) {
+                    if (name.equals(ANY)) {
+                        mAny.set(mLiterals.size());
+                        add(null, null);
+                    } else if (isLiteral(name)) {
+                        add(name, null);
+                    } else {
+                        add(null, Pattern.compile(toRegex(name)));
+                    }
+                }
+                int accept = mLiterals.size();
+                mAccept.set(accept);
+                mCovering.set(accept);
+                for (int i = accept - 1; i >= 0 && mAny.get(i); i--) {
+                    mCovering.set(i);
+                }
+                add(null, null);
+            }
+            close(mStart);
+        }
+
+        BitSet getStart() {
+            return mStart;
+        }
+
+        BitSet step(BitSet states, String name) {
+            BitSet next = new BitSet();
+            for (int i = states.nextSetBit(0); i >= 0; i = states.nextSetBit(i + 1)) {
+                if (mAccept.get(i)) {
+                    continue;
+                }
+                if (mAny.get(i)) {
+                    next.set(i);
+                } else {
+                    String literal = mLiterals.get(i);
+                    if (literal != null ? literal.equals(name) : mPatterns.get(i).matcher(name).matches()) {
+                        next.set(i + 1);
+                    }
+                }
+            }
+            close(next);
+            return next;
+        }
+
+        /**
+         * Returns true iff the states have matched a glob.
+         */
+        boolean isAccepting(BitSet states) {
+            return states.intersects(mAccept);
+        }
+
+        /**
+         * Returns true iff the states could match something further down.
+         */
+        boolean isLive(BitSet states) {
+            for (int i = states.nextSetBit(0); i >= 0; i = states.nextSetBit(i + 1)) {
+                if (!mAccept.get(i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true iff the states match everything further down.
+         */
+        boolean isCovering(BitSet states) {
+            return states.intersects(mCovering);
+        }
+
+        private void add(String literal, Pattern pattern) {
+            mLiterals.add(literal);
+            mPatterns.add(pattern);
+        }
+
+        /**
+         * Adds the positions after each "**", which may match no directories at all.
+         */
+        private void close(BitSet states) {
+            for (int i = states.nextSetBit(0); i >= 0; i = states.nextSetBit(i + 1)) {
+                if (mAny.get(i)) {
+                    states.set(i + 1);
+                }
+            }
+        }
+    }
+
+    private static List<String> split(String glob) {
+        List<String> names = new ArrayList<String>();
+        if (glob.endsWith("/")) {
+            glob += ANY;
+        }
+        for (String name : glob.split("/")) {
+            if (!name.isEmpty() && !name.equals(".")) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static boolean isLiteral(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if ("*?[{".indexOf(name.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String toRegex(String name) {
+        StringBuilder regex = new StringBuilder();
+        boolean alternatives = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '[':
+                    int end = name.indexOf(']', i + 2);
+                    if (end < 0) {
+                        regex.append("\\[");
+                        break;
+                    }
+                    String characters = name.substring(i + 1, end);
+                    if (characters.startsWith("!")) {
+                        characters = "^" + characters.substring(1);
+                    }
+                    regex.append('[').append(characters.replace("\\", "\\\\").replace("[", "\\[").replace("]", "\\]")).append(']');
+                    i = end;
+                    break;
+                case '{':
+                    if (name.indexOf('}', i) < 0) {
+                        regex.append("\\{");
+                        break;
+                    }
+                    alternatives = true;
+                    regex.append("(?:");
+                    break;
+                case '}':
+                    if (alternatives) {
+                        alternatives = false;
+                        regex.append(')');
+                    } else {
+                        regex.append("\\}");
+                    }
+                    break;
+                case ',':
+                    regex.append(alternatives ? "|" : ",");
+                    break;
+                default:
+                    if (!Character.isLetterOrDigit(c)) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+}
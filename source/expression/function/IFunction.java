@@ -17,6 +17,9 @@ package expression.function;
 
 import expression.IExpression;
 
+import java.util.List;
+import java.util.Map;
+
 public interface IFunction extends IExpression {
 
     /**
@@ -28,4 +31,19 @@ public interface IFunction extends IExpression {
      * Returns the parameter for the given key.
      */
     IExpression getParameter(String key);
+
+    /**
+     * Returns all the parameters, keyed by name.
+     */
+    Map<String, IExpression> getParameters();
+
+    /**
+     * Returns the name given to this function, or null if it wasn't given a String name.
+     */
+    String getName();
+
+    /**
+     * Returns the names of the properties this function needs other targets to set.
+     */
+    List<String> getDependencies();
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import java.util.List;
+
+/**
+ * Supplies functions from outside the expression.function package. Providers are found with
+ * ServiceLoader, so a jar on Match's classpath lists its providers in
+ * META-INF/services/expression.function.IFunctionProvider.
+ */
+public interface IFunctionProvider {
+
+    /**
+     * @return the functions to add, each called by its simple class name in match files.
+     */
+    List<Class<? extends Function>> getFunctions();
+}
@@ -15,15 +15,34 @@
  */
 package expression.function;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import main.ClassGraph;
+import main.EventStream;
 import main.IMatch;
 import main.ITarget;
+import main.JUnitPool;
+import main.JUnitRunner;
+import main.Profile;
 import main.Utilities;
 import expression.IExpression;
 import expression.Literal;
@@ -33,10 +52,29 @@ public class JavaJUnit extends Function {
     private static final String RESULT_OUTPUT = "./out/results";
     private static final String MKDIR_COMMAND = "mkdir -p %s";
     private static final String RUN_COMMAND = "java %s org.junit.runner.JUnitCore %s | tee %s";
+    private static final String SHARD_COMMAND = "java -cp %s main.JUnitRunner %s %s %s | tee %s";
+    private static final String DURATIONS = ".durations";
+    private static final String CACHE = ".cache";
+    private static final String CLASSES = ".classes";
+    private static final String OK = "OK (";
+    private static final String FAILURES = "FAILURES!!!";
+    private static final Pattern OK_SUMMARY = Pattern.compile("OK \\((\\d+) tests?\\)");
+    private static final Pattern FAILED_SUMMARY = Pattern.compile("Tests run: (\\d+),\\s+Failures: (\\d+)");
+    private static final String[] DEFAULT_LIBRARIES = {"junit", "hamcrest", "mockito"};
+    private static final int DEFAULT_RECYCLE = 20;
+
+    public static final String FORK = "fork";
+    public static final String IN_PROCESS = "in_process";
+    public static final String POOL = "pool";
+    public static final String RERUN = "rerun-tests";
+    public static final String AFFECTED = "affected-tests";
 
     private String mName;
     private String mMainClass;
     private String mOutput;
+    private String mMode = FORK;
+    private int mShards = 1;
+    private int mRecycle = DEFAULT_RECYCLE;
 
     public JavaJUnit(IMatch match, ITarget target, Map<String, IExpression> parameters) {
         super(match, target, parameters);
@@ -51,6 +89,33 @@ public class JavaJUnit extends Function {
         mName = name.resolve();
         mMainClass = mainClass.resolve();
         mOutput = String.format("%s/%s", RESULT_OUTPUT, mName);
+        if (hasParameter(MODE)) {
+            IExpression mode = getParameter(MODE);
+            if (!(mode instanceof Literal)) {
+                mMatch.error("JavaJUnit function expects a String mode");
+            }
+            mMode = mode.resolve();
+            if (!mMode.equals(FORK) && !mMode.equals(IN_PROCESS) && !mMode.equals(POOL)) {
+                mMatch.error(String.format("JavaJUnit function doesn't support mode %s", mMode));
+            }
+        }
+        if (hasParameter(SHARDS)) {
+            IExpression shards = getParameter(SHARDS);
+            if (!(shards instanceof Literal) || !shards.resolve().matches("[1-9][0-9]*")) {
+                mMatch.error("JavaJUnit function expects a positive number of shards");
+            }
+            mShards = Integer.parseInt(shards.resolve());
+            if (mShards > 1 && !mMode.equals(FORK)) {
+                mMatch.error("JavaJUnit function can only shard forked tests");
+            }
+        }
+        if (hasParameter(RECYCLE)) {
+            IExpression recycle = getParameter(RECYCLE);
+            if (!(recycle instanceof Literal) || !recycle.resolve().matches("[1-9][0-9]*")) {
+                mMatch.error("JavaJUnit function expects a positive number of runs to recycle after");
+            }
+            mRecycle = Integer.parseInt(recycle.resolve());
+        }
     }
 
     /**
@@ -69,9 +134,9 @@ public class JavaJUnit extends Function {
     public String resolve() {
         List<String> libraries = new ArrayList<>();
         Set<String> libs = new HashSet<>();
-        libs.add("junit");
-        libs.add("hamcrest");
-        libs.add("mockito");
+        for (String library : DEFAULT_LIBRARIES) {
+            libs.add(library);
+        }
         if (hasParameter(LIBRARY)) {
             for (String library : getParameter(LIBRARY).resolveList()) {
                 libs.add(library);
@@ -80,10 +145,359 @@ public class JavaJUnit extends Function {
         for (String library : libs) {
             libraries.add(mMatch.getProperty(library));
         }
-        String classpath = String.format("-cp %s", Utilities.join(":", libraries));
-        mMatch.runCommand(String.format(MKDIR_COMMAND, RESULT_OUTPUT));
-        mMatch.runCommand(String.format(RUN_COMMAND, classpath, mMainClass, mOutput));
-        mMatch.provideFile(mOutput);
+        mMatch.awaitFiles(libraries);
+        File cache = new File(mOutput + CACHE);
+        long start = System.nanoTime();
+        String key = getCacheKey(libraries);
+        boolean cached = new File(mOutput).exists() && key.equals(readCache(cache));
+        mMatch.profile(Profile.CACHE, mOutput + CACHE, start);
+        mMatch.event(cached ? EventStream.CACHE_HIT : EventStream.CACHE_MISS, mOutput + CACHE);
+        if (!mMatch.hasOption(RERUN) && cached) {
+            mMatch.event(EventStream.TARGET_CACHED, mName);
+            mMatch.println(String.format("%s passed with the same classpath, not rerunning", mName));
+            provideOutput();
+            return mOutput;
+        }
+        cache.delete();
+        ClassGraph graph = null;
+        List<String> classes = null;
+        if (mMatch.hasOption(AFFECTED)) {
+            graph = getClassGraph(libraries);
+            classes = getAffectedClasses(libraries, graph);
+        }
+        if (classes != null && classes.isEmpty()) {
+            writeOutput(String.format("No tests affected since the last passing run%n%nOK (0 tests)%n"));
+        } else if (!mMode.equals(FORK)) {
+            runInProcess(libraries, classes == null ? Utilities.newList(mMainClass) : classes);
+        } else if (mShards > 1) {
+            runShards(libraries, classes);
+        } else {
+            String classpath = String.format("-cp %s", Utilities.join(":", libraries));
+            String run = classes == null ? mMainClass : Utilities.join(" ", classes);
+            mMatch.runCommand(String.format(MKDIR_COMMAND, RESULT_OUTPUT));
+            mMatch.runCommand(String.format(RUN_COMMAND, classpath, run, mOutput));
+        }
+        // Only passing results are reused, failures always run again
+        if (hasPassed()) {
+            writeCache(cache, key);
+            if (graph != null) {
+                try {
+                    ClassGraph.writeHashes(new File(mOutput + CLASSES), graph.getHashes());
+                } catch (IOException e) {
+                    mMatch.error(e);
+                }
+            }
+        }
+        provideOutput();
         return mOutput;
     }
+
+    /**
+     * Provides the results, and records the files kept beside them for the next run as outputs
+     * too, so they are removed with the results once the target is.
+     */
+    private void provideOutput() {
+        for (String suffix : new String[] {CACHE, CLASSES, DURATIONS}) {
+            if (new File(mOutput + suffix).exists()) {
+                mMatch.addOutput(mOutput + suffix);
+            }
+        }
+        mMatch.provideFile(mOutput);
+    }
+
+    /**
+     * @return a hash of the main class and the contents of every classpath entry.
+     */
+    private String getCacheKey(List<String> libraries) {
+        List<String> sorted = new ArrayList<String>(libraries);
+        Collections.sort(sorted);
+        MessageDigest digest = Utilities.newDigest();
+        try {
+            digest.update(mMainClass.getBytes("UTF-8"));
+            digest.update((byte) 0);
+            for (String library : sorted) {
+                Utilities.digest(digest, new File(library));
+            }
+        } catch (IOException e) {
+            mMatch.error(e);
+        }
+        return Utilities.toHex(digest.digest());
+    }
+
+    private static String readCache(File cache) {
+        try {
+            return cache.exists() ? new String(Files.readAllBytes(cache.toPath()), "UTF-8") : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeCache(File cache, String key) {
+        try {
+            Files.write(cache.toPath(), key.getBytes("UTF-8"));
+        } catch (IOException e) {
+            mMatch.error(e);
+        }
+    }
+
+    private ClassGraph getClassGraph(List<String> libraries) {
+        ClassGraph graph = new ClassGraph();
+        try {
+            for (String library : libraries) {
+                graph.add(new File(library));
+            }
+        } catch (IOException e) {
+            mMatch.error(e);
+        }
+        return graph;
+    }
+
+    /**
+     * @return the test classes that transitively depend on a class whose bytecode changed since
+     * the last passing run, or null if there is no record of a passing run.
+     */
+    private List<String> getAffectedClasses(List<String> libraries, ClassGraph graph) {
+        try {
+            Map<String, String> previous = ClassGraph.readHashes(new File(mOutput + CLASSES));
+            if (previous.isEmpty()) {
+                return null;
+            }
+            Set<String> changed = graph.getChanged(previous);
+            List<String> tests = JUnitRunner.getTestClasses(libraries, mMainClass);
+            List<String> affected = new ArrayList<String>();
+            for (String test : tests) {
+                if (graph.dependsOn(test, changed)) {
+                    affected.add(test);
+                }
+            }
+            mMatch.println(String.format("%s running %d of %d test classes affected by %d changed classes",
+                    mName, affected.size(), tests.size(), changed.size()));
+            return affected;
+        } catch (Exception e) {
+            mMatch.error(e);
+            return null;
+        }
+    }
+
+    private void writeOutput(String results) {
+        new File(RESULT_OUTPUT).mkdirs();
+        try {
+            Files.write(new File(mOutput).toPath(), results.getBytes("UTF-8"));
+        } catch (IOException e) {
+            mMatch.error(e);
+        }
+    }
+
+    /**
+     * @return true iff the output file shows every test passed.
+     */
+    private boolean hasPassed() {
+        File output = new File(mOutput);
+        if (!output.exists()) {
+            return false;
+        }
+        boolean passed = false;
+        try {
+            for (String line : Files.readAllLines(output.toPath(), Charset.defaultCharset())) {
+                if (line.startsWith(FAILURES)) {
+                    return false;
+                } else if (line.startsWith(OK)) {
+                    passed = true;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return passed;
+    }
+
+    /**
+     * Splits the test classes across concurrent JVMs, balanced by how long each class took last
+     * time, and merges their results into the output file.
+     */
+    private void runShards(List<String> libraries, List<String> classes) {
+        File history = new File(mOutput + DURATIONS);
+        try {
+            if (classes == null) {
+                classes = JUnitRunner.getTestClasses(libraries, mMainClass);
+            }
+            List<List<String>> shards = partition(classes, JUnitRunner.readDurations(history), mShards);
+            String runner = new File(JUnitRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+            String classpath = Utilities.join(":", libraries);
+            mMatch.runCommand(String.format(MKDIR_COMMAND, RESULT_OUTPUT));
+            final List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<RuntimeException>());
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < shards.size(); i++) {
+                String shard = getShardOutput(i);
+                final String command = String.format(SHARD_COMMAND, runner, shard + DURATIONS, classpath,
+                        Utilities.join(" ", shards.get(i)), shard);
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            mMatch.runCommand(command);
+                        } catch (RuntimeException e) {
+                            failures.add(e);
+                        }
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (!failures.isEmpty()) {
+                throw failures.get(0);
+            }
+            Map<String, Long> durations = JUnitRunner.readDurations(history);
+            List<String> outputs = new ArrayList<String>();
+            for (int i = 0; i < shards.size(); i++) {
+                File shard = new File(getShardOutput(i));
+                File shardDurations = new File(shard.getPath() + DURATIONS);
+                outputs.add(shard.exists() ? new String(Files.readAllBytes(shard.toPath()), "UTF-8") : "");
+                durations.putAll(JUnitRunner.readDurations(shardDurations));
+                shard.delete();
+                shardDurations.delete();
+            }
+            writeOutput(mergeShards(outputs));
+            JUnitRunner.writeDurations(history, durations);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            mMatch.error(e);
+        }
+    }
+
+    /**
+     * Merges the JUnit results of each shard into one result. Each shard's output is kept in its
+     * own section with its summary prefixed by the shard, and a single summary of every shard
+     * ends the result, so it reads like the result of one run.
+     */
+    static String mergeShards(List<String> outputs) {
+        StringBuilder merged = new StringBuilder();
+        int tests = 0;
+        int failures = 0;
+        boolean passed = true;
+        for (int i = 0; i < outputs.size(); i++) {
+            String shard = String.format("Shard %d of %d", i + 1, outputs.size());
+            merged.append(String.format("%s%n", shard));
+            boolean summarized = false;
+            for (String line : outputs.get(i).split("\r?\n")) {
+                Matcher ok = OK_SUMMARY.matcher(line);
+                Matcher failed = FAILED_SUMMARY.matcher(line);
+                if (ok.matches()) {
+                    tests += Integer.parseInt(ok.group(1));
+                    summarized = true;
+                    merged.append(String.format("%s: %s%n", shard, line));
+                } else if (failed.matches()) {
+                    tests += Integer.parseInt(failed.group(1));
+                    failures += Integer.parseInt(failed.group(2));
+                    passed = false;
+                    summarized = true;
+                    merged.append(String.format("%s: %s%n", shard, line));
+                } else if (line.startsWith(FAILURES)) {
+                    passed = false;
+                } else {
+                    merged.append(String.format("%s%n", line));
+                }
+            }
+            if (!summarized) {
+                // The shard's JVM died before reporting
+                passed = false;
+                merged.append(String.format("%s: no results%n", shard));
+            }
+            merged.append(String.format("%n"));
+        }
+        if (passed) {
+            merged.append(String.format("%s%d tests)%n", OK, tests));
+        } else {
+            merged.append(String.format("%s%nTests run: %d,  Failures: %d%n", FAILURES, tests, failures));
+        }
+        return merged.toString();
+    }
+
+    private String getShardOutput(int shard) {
+        return String.format("%s.%d", mOutput, shard);
+    }
+
+    /**
+     * Greedily assigns the longest remaining class to the least loaded shard. Classes without a
+     * recorded duration are assumed to take the average.
+     */
+    static List<List<String>> partition(List<String> classes, final Map<String, Long> durations, int count) {
+        long total = 0;
+        for (long duration : durations.values()) {
+            total += duration;
+        }
+        final long average = durations.isEmpty() ? 1 : Math.max(1, total / durations.size());
+        final Map<String, Long> estimates = new HashMap<String, Long>();
+        for (String name : classes) {
+            Long duration = durations.get(name);
+            estimates.put(name, duration == null ? average : duration);
+        }
+        List<String> sorted = new ArrayList<String>(classes);
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(estimates.get(b), estimates.get(a));
+            }
+        });
+        List<List<String>> shards = new ArrayList<List<String>>();
+        long[] loads = new long[Math.min(count, classes.size())];
+        for (int i = 0; i < loads.length; i++) {
+            shards.add(new ArrayList<String>());
+        }
+        for (String name : sorted) {
+            int lightest = 0;
+            for (int i = 1; i < loads.length; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            shards.get(lightest).add(name);
+            loads[lightest] += estimates.get(name);
+        }
+        return shards;
+    }
+
+    /**
+     * Runs the tests in this JVM, or in a pooled one, writing the results to the console and the
+     * output file.
+     */
+    private void runInProcess(List<String> libraries, List<String> classes) {
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        try {
+            PrintStream out = new PrintStream(results, true);
+            if (mMode.equals(POOL)) {
+                JUnitPool.run(libraries, classes, out, mRecycle, mMatch);
+            } else {
+                JUnitRunner.run(libraries, classes, out);
+            }
+            out.close();
+            new File(RESULT_OUTPUT).mkdirs();
+            FileOutputStream file = new FileOutputStream(mOutput);
+            results.writeTo(file);
+            file.close();
+            BufferedReader reader = new BufferedReader(new StringReader(results.toString()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                mMatch.println(line);
+            }
+        } catch (Exception e) {
+            mMatch.error(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getDependencies() {
+        List<String> dependencies = super.getDependencies();
+        for (String library : DEFAULT_LIBRARIES) {
+            dependencies.add(library);
+        }
+        return dependencies;
+    }
 }
@@ -22,7 +22,11 @@ import main.ITarget;
 import main.Utilities;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +36,8 @@ public class JavaJar extends Function {
     private static final String ECHO_COMMAND = "echo \"Manifest-Version: 1.0\nMain-Class: %s\n%s\" > %s";
     private static final String JAVAC_COMMAND = "javac %s %s -d %s";
     private static final String JAR_COMMAND = "jar cfm %s %s -C %s .";
+    private static final String BATCH_OUTPUT = "./out/java/batches";
+    private static final int MINIMUM_SHARD = 100;
 
     private IExpression mSource;
     private IExpression mMainClass;
@@ -39,6 +45,7 @@ public class JavaJar extends Function {
     private String mManifest;
     private String mIntermediate;
     private String mOutput;
+    private int mShards = 1;
 
     public JavaJar(IMatch match, ITarget target, Map<String, IExpression> parameters) {
         super(match, target, parameters);
@@ -52,6 +59,13 @@ public class JavaJar extends Function {
         mOutput = String.format("%s/%s.jar", JAR_OUTPUT, mName);
         mIntermediate = String.format("%s/%s", CLASS_OUTPUT, mName);
         mManifest = String.format("%s/MANIFEST.MF", mIntermediate);
+        if (hasParameter(SHARDS)) {
+            IExpression shards = getParameter(SHARDS);
+            if (!(shards instanceof Literal) || !shards.resolve().matches("[1-9][0-9]*")) {
+                mMatch.error("JavaJar function expects a positive number of shards");
+            }
+            mShards = Integer.parseInt(shards.resolve());
+        }
     }
 
     /**
@@ -76,19 +90,131 @@ public class JavaJar extends Function {
         String jarClasspath = "";
         if (hasParameter(LIBRARY)) {
             for (String library : getParameter(LIBRARY).resolveList()) {
-                String path = mMatch.getProperty(library);
-                mMatch.awaitFile(path);
-                libraries.add(path);
+                libraries.add(mMatch.getProperty(library));
             }
+            mMatch.awaitFiles(libraries);
             javacClasspath = String.format("-cp %s", Utilities.join(":", libraries));
             jarClasspath = String.format("Class-Path: %s\n", Utilities.join(":", libraries));
         }
-        String files = Utilities.join(" ", mSource.resolveList());
+        // Every source is compiled again, so remove the classes of the last compile, otherwise
+        // the classes of deleted sources would end up in the jar
+        for (String output : mMatch.getPreviousOutputs()) {
+            if (output.startsWith(mIntermediate + "/")) {
+                new File(output).delete();
+            }
+        }
         mMatch.runCommand(String.format(MKDIR_COMMAND, directories));
         mMatch.runCommand(String.format(ECHO_COMMAND, mMainClass.resolve(), jarClasspath, mManifest));
-        mMatch.runCommand(String.format(JAVAC_COMMAND, javacClasspath, files, mIntermediate));
+        if (mShards > 1) {
+            compileShards(libraries);
+        } else {
+            String files = Utilities.join(" ", mSource.resolveList());
+            mMatch.runCommand(String.format(JAVAC_COMMAND, javacClasspath, files, mIntermediate));
+        }
+        addOutputs(new File(mIntermediate), mIntermediate);
         mMatch.runCommand(String.format(JAR_COMMAND, mOutput, mManifest, mIntermediate));
         mMatch.provideFile(mOutput);
         return mOutput;
     }
+
+    /**
+     * Compiles the sources in waves of concurrent javac runs, each wave with the classes of the
+     * earlier waves on its classpath, so a large target uses more than one core.
+     *
+     * Each run writes to its own directory, which is moved into the intermediate directory once
+     * the wave is done, so no run reads a class file another run is still writing.
+     */
+    private void compileShards(List<String> libraries) {
+        File batches = new File(String.format("%s/%s", BATCH_OUTPUT, mName));
+        // Clear anything left behind by a build that was interrupted mid-wave
+        delete(batches);
+        try {
+            List<List<List<String>>> waves = SourceGraph.read(mSource.resolveList()).getWaves(mShards, MINIMUM_SHARD);
+            List<String> classpath = new ArrayList<String>(libraries);
+            classpath.add(mIntermediate);
+            String option = String.format("-cp %s", Utilities.join(":", classpath));
+            for (List<List<String>> wave : waves) {
+                final List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<RuntimeException>());
+                List<Thread> threads = new ArrayList<Thread>();
+                List<File> directories = new ArrayList<File>();
+                for (List<String> batch : wave) {
+                    File directory = new File(batches, Integer.toString(directories.size()));
+                    directory.mkdirs();
+                    directories.add(directory);
+                    final String command = String.format(JAVAC_COMMAND, option, Utilities.join(" ", batch), directory.getPath());
+                    Thread thread = new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                mMatch.runCommand(command);
+                            } catch (RuntimeException e) {
+                                failures.add(e);
+                            }
+                        }
+                    };
+                    thread.start();
+                    threads.add(thread);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                if (!failures.isEmpty()) {
+                    throw failures.get(0);
+                }
+                for (File directory : directories) {
+                    move(directory, new File(mIntermediate));
+                }
+            }
+        } catch (IOException e) {
+            mMatch.error(e);
+        } catch (InterruptedException e) {
+            mMatch.error("compile interrupted");
+        } finally {
+            delete(batches);
+        }
+    }
+
+    /**
+     * Moves the files under the given directory to the same paths under the destination.
+     */
+    private static void move(File directory, File destination) throws IOException {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        destination.mkdirs();
+        for (File child : children) {
+            File target = new File(destination, child.getName());
+            if (child.isDirectory()) {
+                move(child, target);
+            } else {
+                Files.move(child.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void addOutputs(File directory, String path) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String childPath = String.format("%s/%s", path, child.getName());
+            if (child.isDirectory()) {
+                addOutputs(child, childPath);
+            } else {
+                mMatch.addOutput(childPath);
+            }
+        }
+    }
 }
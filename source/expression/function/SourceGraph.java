@@ -0,0 +1,395 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The dependencies between the java sources of a target, found from the types each source
+ * declares and the names it imports and uses, without compiling them.
+ *
+ * The analysis errs on the side of extra dependencies: any name that could refer to a type of
+ * another source, through the source's package, an import or a qualified name, is a dependency.
+ * Names that don't refer to the target's own sources, like those of libraries, are ignored.
+ */
+public class SourceGraph {
+
+    private static final Pattern PACKAGE = Pattern.compile("(?<![\\w$.])package\\s+([\\w$.\\s]+?)\\s*;");
+    private static final Pattern IMPORT = Pattern.compile("(?<![\\w$.])import\\s+(static\\s+)?([\\w$.\\s]+?)(\\.\\s*\\*)?\\s*;");
+    private static final Pattern DECLARATION = Pattern.compile("(?<![\\w$.])(?:class|interface|enum|record)\\s+([A-Za-z_$][\\w$]*)");
+    private static final Pattern NAME = Pattern.compile("(?<![\\w$.])[A-Za-z_$][\\w$]*(?:\\s*\\.\\s*[A-Za-z_$][\\w$]*)*");
+    private static final Pattern SPACE = Pattern.compile("\\s+");
+
+    private final List<String> mFiles = new ArrayList<String>();
+    private final List<Source> mSources = new ArrayList<Source>();
+    private final Map<String, Set<Integer>> mTypes = new HashMap<String, Set<Integer>>();
+    private int[][] mEdges;
+
+    /**
+     * Reads and indexes the given source files.
+     */
+    public static SourceGraph read(List<String> files) throws IOException {
+        SourceGraph graph = new SourceGraph();
+        for (String file : files) {
+            graph.add(file, new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+        }
+        return graph;
+    }
+
+    /**
+     * Indexes the given source.
+     */
+    public void add(String file, String content) {
+        String code = strip(content);
+        Source source = new Source();
+        Matcher matcher = PACKAGE.matcher(code);
+        source.mPackage = matcher.find() ? SPACE.matcher(matcher.group(1)).replaceAll("") : "";
+        matcher = IMPORT.matcher(code);
+        while (matcher.find()) {
+            String name = SPACE.matcher(matcher.group(2)).replaceAll("");
+            if (matcher.group(3) != null) {
+                source.mWildcards.add(name);
+            }
+            // Whether it names a type, a member or a package, the longest type prefix is used
+            source.mNames.add(name);
+        }
+        matcher = NAME.matcher(code);
+        while (matcher.find()) {
+            source.mNames.add(SPACE.matcher(matcher.group()).replaceAll(""));
+        }
+        int index = mFiles.size();
+        matcher = DECLARATION.matcher(code);
+        while (matcher.find()) {
+            String type = source.mPackage.isEmpty() ? matcher.group(1) : source.mPackage + "." + matcher.group(1);
+            Set<Integer> declaring = mTypes.get(type);
+            if (declaring == null) {
+                declaring = new HashSet<Integer>();
+                mTypes.put(type, declaring);
+            }
+            declaring.add(index);
+        }
+        mFiles.add(file);
+        mSources.add(source);
+        mEdges = null;
+    }
+
+    /**
+     * @return the sources the given source depends on.
+     */
+    public List<String> getDependencies(String file) {
+        List<String> dependencies = new ArrayList<String>();
+        for (int dependency : getEdges()[mFiles.indexOf(file)]) {
+            dependencies.add(mFiles.get(dependency));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Partitions the sources into waves of up to the given number of batches. The batches of a
+     * wave don't depend on each other, only on the batches of earlier waves, so they can be
+     * compiled at the same time once the earlier waves are compiled.
+     *
+     * Sources that depend on each other, directly or through other sources, are always in the
+     * same batch. Waves are made from consecutive layers of the dependency graph until they hold
+     * at least the given minimum number of sources per batch, to make each compile worth starting.
+     */
+    public List<List<List<String>>> getWaves(int batches, int minimum) {
+        int[][] edges = getEdges();
+        int[] components = getComponents(edges);
+        int count = 0;
+        for (int component : components) {
+            count = Math.max(count, component + 1);
+        }
+        // Components are numbered dependencies first, so each layer follows those it depends on
+        int[] layers = new int[count];
+        List<List<Integer>> members = new ArrayList<List<Integer>>();
+        for (int i = 0; i < count; i++) {
+            members.add(new ArrayList<Integer>());
+        }
+        for (int file = 0; file < components.length; file++) {
+            members.get(components[file]).add(file);
+        }
+        int depth = 0;
+        for (int component = 0; component < count; component++) {
+            for (int file : members.get(component)) {
+                for (int dependency : edges[file]) {
+                    if (components[dependency] != component) {
+                        layers[component] = Math.max(layers[component], layers[components[dependency]] + 1);
+                    }
+                }
+            }
+            depth = Math.max(depth, layers[component] + 1);
+        }
+        List<List<Integer>> byLayer = new ArrayList<List<Integer>>();
+        for (int i = 0; i < depth; i++) {
+            byLayer.add(new ArrayList<Integer>());
+        }
+        for (int component = 0; component < count; component++) {
+            byLayer.get(layers[component]).add(component);
+        }
+        List<List<List<String>>> waves = new ArrayList<List<List<String>>>();
+        List<Integer> wave = new ArrayList<Integer>();
+        int size = 0;
+        for (List<Integer> layer : byLayer) {
+            for (int component : layer) {
+                wave.add(component);
+                size += members.get(component).size();
+            }
+            if (size >= (long) batches * minimum) {
+                waves.add(getBatches(wave, members, components, edges, batches));
+                wave = new ArrayList<Integer>();
+                size = 0;
+            }
+        }
+        if (!wave.isEmpty()) {
+            waves.add(getBatches(wave, members, components, edges, batches));
+        }
+        return waves;
+    }
+
+    /**
+     * Joins the components of a wave that depend on each other, then spreads them across the
+     * batches, the largest first onto the smallest batch.
+     */
+    private List<List<String>> getBatches(List<Integer> wave, List<List<Integer>> members, int[] components, int[][] edges, int count) {
+        Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+        for (int component : wave) {
+            parents.put(component, component);
+        }
+        for (int component : wave) {
+            for (int file : members.get(component)) {
+                for (int dependency : edges[file]) {
+                    Integer other = components[dependency];
+                    if (parents.containsKey(other)) {
+                        parents.put(find(parents, component), find(parents, other));
+                    }
+                }
+            }
+        }
+        final Map<Integer, List<Integer>> groups = new HashMap<Integer, List<Integer>>();
+        for (int component : wave) {
+            int root = find(parents, component);
+            List<Integer> group = groups.get(root);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(root, group);
+            }
+            group.addAll(members.get(component));
+        }
+        List<List<Integer>> sorted = new ArrayList<List<Integer>>(groups.values());
+        Collections.sort(sorted, new Comparator<List<Integer>>() {
+            @Override
+            public int compare(List<Integer> a, List<Integer> b) {
+                return Integer.compare(b.size(), a.size());
+            }
+        });
+        int[] loads = new int[Math.min(count, sorted.size())];
+        List<List<Integer>> batches = new ArrayList<List<Integer>>();
+        for (int i = 0; i < loads.length; i++) {
+            batches.add(new ArrayList<Integer>());
+        }
+        for (List<Integer> group : sorted) {
+            int lightest = 0;
+            for (int i = 1; i < loads.length; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            batches.get(lightest).addAll(group);
+            loads[lightest] += group.size();
+        }
+        List<List<String>> files = new ArrayList<List<String>>();
+        for (List<Integer> batch : batches) {
+            Collections.sort(batch);
+            List<String> names = new ArrayList<String>();
+            for (int file : batch) {
+                names.add(mFiles.get(file));
+            }
+            files.add(names);
+        }
+        return files;
+    }
+
+    private static int find(Map<Integer, Integer> parents, int component) {
+        int root = component;
+        while (parents.get(root) != root) {
+            root = parents.get(root);
+        }
+        return root;
+    }
+
+    private int[][] getEdges() {
+        if (mEdges != null) {
+            return mEdges;
+        }
+        int[][] edges = new int[mSources.size()][];
+        for (int file = 0; file < edges.length; file++) {
+            Source source = mSources.get(file);
+            Set<Integer> dependencies = new LinkedHashSet<Integer>();
+            for (String name : source.mNames) {
+                String[] parts = name.split("\\.");
+                addTypes(source.mPackage.isEmpty() ? parts[0] : source.mPackage + "." + parts[0], dependencies);
+                for (String wildcard : source.mWildcards) {
+                    addTypes(wildcard + "." + parts[0], dependencies);
+                }
+                String prefix = parts[0];
+                for (int i = 1; i < parts.length; i++) {
+                    prefix += "." + parts[i];
+                    addTypes(prefix, dependencies);
+                }
+            }
+            dependencies.remove(file);
+            edges[file] = new int[dependencies.size()];
+            int i = 0;
+            for (int dependency : dependencies) {
+                edges[file][i++] = dependency;
+            }
+        }
+        mEdges = edges;
+        return edges;
+    }
+
+    private void addTypes(String type, Set<Integer> dependencies) {
+        Set<Integer> declaring = mTypes.get(type);
+        if (declaring != null) {
+            dependencies.addAll(declaring);
+        }
+    }
+
+    /**
+     * Finds the strongly connected components with Tarjan's algorithm, without recursion so deep
+     * dependency chains can't overflow the stack.
+     *
+     * @return the component of each file, numbered so a component's dependencies come first.
+     */
+    static int[] getComponents(int[][] edges) {
+        int count = edges.length;
+        int[] indices = new int[count];
+        int[] lows = new int[count];
+        int[] components = new int[count];
+        boolean[] stacked = new boolean[count];
+        int[] stack = new int[count];
+        int[] calls = new int[count];
+        int[] next = new int[count];
+        Arrays.fill(indices, -1);
+        int index = 0;
+        int component = 0;
+        int top = 0;
+        for (int root = 0; root < count; root++) {
+            if (indices[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            calls[0] = root;
+            next[0] = 0;
+            indices[root] = lows[root] = index++;
+            stack[top++] = root;
+            stacked[root] = true;
+            while (depth >= 0) {
+                int v = calls[depth];
+                if (next[depth] < edges[v].length) {
+                    int w = edges[v][next[depth]++];
+                    if (indices[w] < 0) {
+                        indices[w] = lows[w] = index++;
+                        stack[top++] = w;
+                        stacked[w] = true;
+                        calls[++depth] = w;
+                        next[depth] = 0;
+                    } else if (stacked[w]) {
+                        lows[v] = Math.min(lows[v], indices[w]);
+                    }
+                } else {
+                    if (lows[v] == indices[v]) {
+                        int w;
+                        do {
+                            w = stack[--top];
+                            stacked[w] = false;
+                            components[w] = component;
+                        } while (w != v);
+                        component++;
+                    }
+                    if (--depth >= 0) {
+                        int u = calls[depth];
+                        lows[u] = Math.min(lows[u], lows[v]);
+                    }
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Replaces comments, strings and characters with spaces, so only code is matched.
+     */
+    static String strip(String content) {
+        StringBuilder code = new StringBuilder(content.length());
+        int length = content.length();
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            int end;
+            if (content.startsWith("//", i)) {
+                end = content.indexOf('\n', i);
+            } else if (content.startsWith("/*", i)) {
+                end = content.indexOf("*/", i + 2);
+                end = end < 0 ? -1 : end + 2;
+            } else if (content.startsWith("\"\"\"", i)) {
+                end = content.indexOf("\"\"\"", i + 3);
+                while (end > 0 && content.charAt(end - 1) == '\\') {
+                    end = content.indexOf("\"\"\"", end + 1);
+                }
+                end = end < 0 ? -1 : end + 3;
+            } else if (c == '"' || c == '\'') {
+                end = i + 1;
+                while (end < length && content.charAt(end) != c && content.charAt(end) != '\n') {
+                    end += content.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, length);
+            } else {
+                code.append(c);
+                i++;
+                continue;
+            }
+            if (end < 0) {
+                end = length;
+            }
+            code.append(' ');
+            i = end;
+        }
+        return code.toString();
+    }
+
+    private static final class Source {
+        String mPackage;
+        final Set<String> mNames = new HashSet<String>();
+        final List<String> mWildcards = new ArrayList<String>();
+    }
+}
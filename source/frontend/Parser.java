@@ -51,7 +51,7 @@ public class Parser implements IParser {
         List<ITarget> targets = new ArrayList<ITarget>();
         mLexer.move();
         while (!mLexer.currentIs(Category.EOF)) {
-            mTarget = new Target(mMatch, mFile);
+            mTarget = new Target(mMatch, mFile, mLexer.getCurrent().mLine);
             mTarget.setFunction(matchFunction());
             targets.add(mTarget);
         }
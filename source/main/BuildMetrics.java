@@ -0,0 +1,322 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the build is doing, cheaply enough to update from every target's thread, and
+ * exposes the counts over JMX and optionally as Prometheus metrics on a loopback port.
+ */
+public class BuildMetrics implements BuildMetricsMBean {
+
+    public static final String OBJECT_NAME = "match:type=Build";
+    public static final String PATH = "/metrics";
+
+    private final LongAdder mPending = new LongAdder();
+    private final LongAdder mRunning = new LongAdder();
+    private final LongAdder mBlocked = new LongAdder();
+    private final LongAdder mDone = new LongAdder();
+    private final LongAdder mFailed = new LongAdder();
+    private final LongAdder mCommands = new LongAdder();
+    private final LongAdder mHits = new LongAdder();
+    private final LongAdder mMisses = new LongAdder();
+    private final LongAdder mAwaited = new LongAdder();
+    private volatile long mScan;
+    private volatile long mParse;
+    private volatile long mConfigure;
+    private volatile long mBuild;
+    private volatile long mBuildStart;
+    private HttpServer mServer;
+
+    /**
+     * Resets the counts for a new build.
+     */
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] {mPending, mRunning, mBlocked, mDone, mFailed, mCommands, mHits, mMisses, mAwaited}) {
+            adder.reset();
+        }
+        mScan = mParse = mConfigure = mBuild = mBuildStart = 0;
+    }
+
+    /**
+     * Records the time taken by a phase.
+     */
+    public void setPhase(String phase, long millis) {
+        if (phase.equals(Profile.SCAN)) {
+            mScan = millis;
+        } else if (phase.equals(Profile.PARSE)) {
+            mParse = millis;
+        } else if (phase.equals(Profile.CONFIGURE)) {
+            mConfigure = millis;
+        }
+    }
+
+    /**
+     * Marks the start of building the given number of targets.
+     */
+    public void startBuild(int targets) {
+        mPending.add(targets);
+        mBuild = 0;
+        mBuildStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks the end of building.
+     */
+    public void finishBuild() {
+        mBuild = System.currentTimeMillis() - mBuildStart;
+    }
+
+    public void startTarget() {
+        mPending.decrement();
+        mRunning.increment();
+    }
+
+    public void finishTarget(boolean built) {
+        mRunning.decrement();
+        (built ? mDone : mFailed).increment();
+    }
+
+    public void startWait() {
+        mBlocked.increment();
+    }
+
+    public void finishWait() {
+        mBlocked.decrement();
+    }
+
+    public void awaitFiles(int count) {
+        mAwaited.add(count);
+    }
+
+    public void startCommand() {
+        mCommands.increment();
+    }
+
+    public void finishCommand() {
+        mCommands.decrement();
+    }
+
+    public void cache(boolean hit) {
+        (hit ? mHits : mMisses).increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTargetsPending() {
+        return mPending.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTargetsRunning() {
+        return mRunning.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTargetsBlocked() {
+        return mBlocked.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTargetsDone() {
+        return mDone.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getTargetsFailed() {
+        return mFailed.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getActiveCommands() {
+        return mCommands.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCacheHits() {
+        return mHits.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCacheMisses() {
+        return mMisses.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getCacheHitRatio() {
+        long hits = mHits.sum();
+        long lookups = hits + mMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFilesAwaited() {
+        return mAwaited.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getScanMillis() {
+        return mScan;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getParseMillis() {
+        return mParse;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getConfigureMillis() {
+        return mConfigure;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBuildMillis() {
+        long start = mBuildStart;
+        return mBuild == 0 && start != 0 ? System.currentTimeMillis() - start : mBuild;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, replacing any other build's.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Serves the metrics in the Prometheus text format on the given loopback port.
+     *
+     * @return the port, which is chosen by the system if 0 is given.
+     */
+    public synchronized int serve(int port) throws IOException {
+        if (mServer == null) {
+            mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            mServer.createContext(PATH, new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    byte[] body = toPrometheus().getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream output = exchange.getResponseBody();
+                    output.write(body);
+                    output.close();
+                }
+            });
+            mServer.start();
+        }
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving the metrics.
+     */
+    public synchronized void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+            mServer = null;
+        }
+    }
+
+    /**
+     * @return the metrics in the Prometheus text format.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# TYPE match_targets gauge\n");
+        text.append(String.format(Locale.ROOT, "match_targets{state=\"pending\"} %d\n", getTargetsPending()));
+        text.append(String.format(Locale.ROOT, "match_targets{state=\"running\"} %d\n", getTargetsRunning()));
+        text.append(String.format(Locale.ROOT, "match_targets{state=\"blocked\"} %d\n", getTargetsBlocked()));
+        text.append(String.format(Locale.ROOT, "match_targets{state=\"done\"} %d\n", getTargetsDone()));
+        text.append(String.format(Locale.ROOT, "match_targets{state=\"failed\"} %d\n", getTargetsFailed()));
+        text.append("# TYPE match_commands_active gauge\n");
+        text.append(String.format(Locale.ROOT, "match_commands_active %d\n", getActiveCommands()));
+        text.append("# TYPE match_cache_lookups_total counter\n");
+        text.append(String.format(Locale.ROOT, "match_cache_lookups_total{result=\"hit\"} %d\n", getCacheHits()));
+        text.append(String.format(Locale.ROOT, "match_cache_lookups_total{result=\"miss\"} %d\n", getCacheMisses()));
+        text.append("# TYPE match_files_awaited_total counter\n");
+        text.append(String.format(Locale.ROOT, "match_files_awaited_total %d\n", getFilesAwaited()));
+        text.append("# TYPE match_phase_seconds gauge\n");
+        text.append(String.format(Locale.ROOT, "match_phase_seconds{phase=\"scan\"} %.3f\n", getScanMillis() / 1000.0));
+        text.append(String.format(Locale.ROOT, "match_phase_seconds{phase=\"parse\"} %.3f\n", getParseMillis() / 1000.0));
+        text.append(String.format(Locale.ROOT, "match_phase_seconds{phase=\"configure\"} %.3f\n", getConfigureMillis() / 1000.0));
+        text.append(String.format(Locale.ROOT, "match_phase_seconds{phase=\"build\"} %.3f\n", getBuildMillis() / 1000.0));
+        return text.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+/**
+ * The live state of a build, exposed over JMX.
+ */
+public interface BuildMetricsMBean {
+
+    /**
+     * @return the number of targets that haven't started building.
+     */
+    long getTargetsPending();
+
+    /**
+     * @return the number of targets building, including those blocked.
+     */
+    long getTargetsRunning();
+
+    /**
+     * @return the number of targets waiting for another target's file.
+     */
+    long getTargetsBlocked();
+
+    /**
+     * @return the number of targets that finished building.
+     */
+    long getTargetsDone();
+
+    /**
+     * @return the number of targets that failed to build.
+     */
+    long getTargetsFailed();
+
+    /**
+     * @return the number of commands running.
+     */
+    long getActiveCommands();
+
+    /**
+     * @return the number of cache lookups that found a reusable result.
+     */
+    long getCacheHits();
+
+    /**
+     * @return the number of cache lookups that didn't.
+     */
+    long getCacheMisses();
+
+    /**
+     * @return the fraction of cache lookups that hit, or 0 if there were none.
+     */
+    double getCacheHitRatio();
+
+    /**
+     * @return the number of times targets waited for a file.
+     */
+    long getFilesAwaited();
+
+    /**
+     * @return the milliseconds spent scanning.
+     */
+    long getScanMillis();
+
+    /**
+     * @return the milliseconds spent parsing.
+     */
+    long getParseMillis();
+
+    /**
+     * @return the milliseconds spent configuring.
+     */
+    long getConfigureMillis();
+
+    /**
+     * @return the milliseconds spent building, so far if still building.
+     */
+    long getBuildMillis();
+}
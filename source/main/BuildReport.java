@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times each target while building and summarizes where the time went: the slowest targets, the
+ * chain of targets that actually determined how long the build took, how long targets were
+ * blocked waiting for each other versus running commands, and how many were busy at once.
+ */
+public class BuildReport {
+
+    public static final int SLOWEST = 5;
+
+    private final Map<ITarget, Timing> mTimings = new ConcurrentHashMap<ITarget, Timing>();
+    private final Map<String, Provided> mProvided = new ConcurrentHashMap<String, Provided>();
+    private long mStart;
+    private long mEnd;
+
+    /**
+     * Marks the start of the build.
+     */
+    public void start() {
+        mStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the build.
+     */
+    public void finish() {
+        mEnd = System.nanoTime();
+    }
+
+    /**
+     * Marks the start of building the given target.
+     */
+    public void start(ITarget target, String name) {
+        mTimings.put(target, new Timing(target, name, System.nanoTime()));
+    }
+
+    /**
+     * Marks the end of building the given target.
+     */
+    public void finish(ITarget target) {
+        Timing timing = mTimings.get(target);
+        if (timing != null) {
+            timing.mEnd = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records that the target waited, from the given System.nanoTime() until now, for a file.
+     */
+    public void addAwait(ITarget target, String file, long start) {
+        addAwait(target, Collections.singletonList(file), start);
+    }
+
+    /**
+     * Records that the target waited, from the given System.nanoTime() until now, for files.
+     */
+    public void addAwait(ITarget target, Collection<String> files, long start) {
+        Timing timing = mTimings.get(target);
+        if (timing != null) {
+            timing.mAwait.addAndGet(System.nanoTime() - start);
+            timing.mAwaited.addAll(files);
+        }
+    }
+
+    /**
+     * Records that the target ran a command from the given System.nanoTime() until now.
+     */
+    public void addCommand(ITarget target, long start) {
+        Timing timing = mTimings.get(target);
+        if (timing != null) {
+            timing.mCommand.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records that the target provided a file.
+     */
+    public void provide(ITarget target, String file) {
+        mProvided.put(file, new Provided(target, System.nanoTime()));
+    }
+
+    /**
+     * @return the lines of the summary.
+     */
+    public List<String> summarize() {
+        List<String> lines = new ArrayList<String>();
+        List<Timing> timings = new ArrayList<Timing>();
+        for (Timing timing : mTimings.values()) {
+            if (timing.mEnd != 0) {
+                timings.add(timing);
+            }
+        }
+        if (timings.isEmpty()) {
+            return lines;
+        }
+        Collections.sort(timings, new Comparator<Timing>() {
+            @Override
+            public int compare(Timing a, Timing b) {
+                return Long.compare(b.getDuration(), a.getDuration());
+            }
+        });
+        lines.add("Slowest targets:");
+        long busy = 0;
+        for (int i = 0; i < timings.size(); i++) {
+            Timing timing = timings.get(i);
+            busy += timing.getDuration() - timing.mAwait.get();
+            if (i < SLOWEST) {
+                lines.add(String.format("  %s %s (waiting %s, commands %s)", format(timing.getDuration()),
+                        timing.mName, format(timing.mAwait.get()), format(timing.mCommand.get())));
+            }
+        }
+        List<String> path = new ArrayList<String>();
+        long total = 0;
+        Timing current = timings.get(0);
+        for (Timing timing : timings) {
+            if (timing.mEnd > current.mEnd) {
+                current = timing;
+            }
+        }
+        long end = current.mEnd;
+        while (current != null) {
+            // Step back along the last file this target waited for to be provided
+            Provided latest = null;
+            for (String file : current.mAwaited) {
+                Provided provided = mProvided.get(file);
+                if (provided != null && mTimings.containsKey(provided.mTarget) && provided.mTarget != current.mTarget
+                        && (latest == null || provided.mTime > latest.mTime)) {
+                    latest = provided;
+                }
+            }
+            long start = latest == null ? current.mStart : latest.mTime;
+            path.add(0, String.format("%s %s", current.mName, format(end - start)));
+            total += end - start;
+            current = latest == null || path.size() > mTimings.size() ? null : mTimings.get(latest.mTarget);
+            end = start;
+        }
+        lines.add(String.format("Critical path %s: %s", format(total), Utilities.join(" -> ", path)));
+        long wall = Math.max(1, mEnd - mStart);
+        lines.add(String.format("Parallelism %.1f over %s", (double) busy / wall, format(wall)));
+        return lines;
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.1fs", nanos / 1e9);
+    }
+
+    private static class Timing {
+        private final ITarget mTarget;
+        private final String mName;
+        private final long mStart;
+        private volatile long mEnd;
+        private final AtomicLong mAwait = new AtomicLong();
+        private final AtomicLong mCommand = new AtomicLong();
+        private final Queue<String> mAwaited = new ConcurrentLinkedQueue<String>();
+        Timing(ITarget target, String name, long start) {
+            mTarget = target;
+            mName = name;
+            mStart = start;
+        }
+        long getDuration() {
+            return mEnd - mStart;
+        }
+    }
+
+    private static class Provided {
+        private final ITarget mTarget;
+        private final long mTime;
+        Provided(ITarget target, long time) {
+            mTarget = target;
+            mTime = time;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The classes in a set of jars and directories, the classes each one refers to, and a hash of
+ * each one's bytecode.
+ *
+ * References are read from the constant pool, so they cover every class used in code, signatures
+ * and annotations, but not constants the compiler inlined.
+ */
+public class ClassGraph {
+
+    private static final String CLASS = ".class";
+    private static final Pattern DESCRIPTOR = Pattern.compile("L([\\w/$]+);");
+
+    private final Map<String, String> mHashes = new HashMap<String, String>();
+    private final Map<String, Set<String>> mReferences = new HashMap<String, Set<String>>();
+
+    /**
+     * Adds every class in the jar or directory.
+     */
+    public void add(File file) throws IOException {
+        if (file.isDirectory()) {
+            addDirectory(file);
+        } else if (file.exists()) {
+            JarFile jar = new JarFile(file);
+            try {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (entry.getName().endsWith(CLASS)) {
+                        addClass(read(jar.getInputStream(entry)));
+                    }
+                }
+            } finally {
+                jar.close();
+            }
+        }
+    }
+
+    private void addDirectory(File directory) throws IOException {
+        for (File child : directory.listFiles()) {
+            if (child.isDirectory()) {
+                addDirectory(child);
+            } else if (child.getName().endsWith(CLASS)) {
+                addClass(Files.readAllBytes(child.toPath()));
+            }
+        }
+    }
+
+    void addClass(byte[] bytes) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        input.readInt(); // magic
+        input.readUnsignedShort(); // minor version
+        input.readUnsignedShort(); // major version
+        int count = input.readUnsignedShort();
+        String[] strings = new String[count];
+        int[] classes = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = input.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    strings[i] = input.readUTF();
+                    break;
+                case 7: // Class
+                    classes[i] = input.readUnsignedShort();
+                    break;
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    input.readUnsignedShort();
+                    break;
+                case 15: // MethodHandle
+                    input.readUnsignedByte();
+                    input.readUnsignedShort();
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    input.readInt();
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    input.readLong();
+                    i++; // Takes two entries
+                    break;
+                default:
+                    throw new IOException(String.format("unknown constant pool tag %d", tag));
+            }
+        }
+        input.readUnsignedShort(); // access flags
+        String name = toClassName(strings[classes[input.readUnsignedShort()]]);
+        Set<String> references = new HashSet<String>();
+        for (int i = 1; i < count; i++) {
+            if (classes[i] != 0) {
+                String reference = strings[classes[i]];
+                if (reference.startsWith("[")) {
+                    addDescriptors(reference, references);
+                } else {
+                    references.add(toClassName(reference));
+                }
+            } else if (strings[i] != null) {
+                addDescriptors(strings[i], references);
+            }
+        }
+        references.remove(name);
+        mReferences.put(name, references);
+        mHashes.put(name, Utilities.toHex(Utilities.newDigest().digest(bytes)));
+    }
+
+    private static void addDescriptors(String value, Set<String> references) {
+        Matcher matcher = DESCRIPTOR.matcher(value);
+        while (matcher.find()) {
+            references.add(toClassName(matcher.group(1)));
+        }
+    }
+
+    private static String toClassName(String internal) {
+        return internal.replace('/', '.');
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+        input.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * @return the hash of each class's bytecode, keyed by class name.
+     */
+    public Map<String, String> getHashes() {
+        return mHashes;
+    }
+
+    /**
+     * @return the classes that were added, removed or changed since the hashes were taken.
+     */
+    public Set<String> getChanged(Map<String, String> previous) {
+        Set<String> changed = new HashSet<String>();
+        for (Map.Entry<String, String> hash : mHashes.entrySet()) {
+            if (!hash.getValue().equals(previous.get(hash.getKey()))) {
+                changed.add(hash.getKey());
+            }
+        }
+        for (String name : previous.keySet()) {
+            if (!mHashes.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return true iff the class, or any class it transitively refers to, is in the given set.
+     */
+    public boolean dependsOn(String name, Set<String> classes) {
+        Set<String> visited = new HashSet<String>();
+        Deque<String> pending = new ArrayDeque<String>();
+        pending.add(name);
+        while (!pending.isEmpty()) {
+            String current = pending.pop();
+            if (!visited.add(current)) {
+                continue;
+            }
+            if (classes.contains(current)) {
+                return true;
+            }
+            Set<String> references = mReferences.get(current);
+            if (references != null) {
+                pending.addAll(references);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the class hashes written by writeHashes.
+     */
+    public static Map<String, String> readHashes(File file) throws IOException {
+        Map<String, String> hashes = new HashMap<String, String>();
+        if (file.exists()) {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    hashes.put(fields[0], fields[1]);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Writes the class hashes.
+     */
+    public static void writeHashes(File file, Map<String, String> hashes) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            for (Map.Entry<String, String> hash : hashes.entrySet()) {
+                writer.println(String.format("%s\t%s", hash.getKey(), hash.getValue()));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
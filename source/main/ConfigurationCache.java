@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import expression.ExpressionList;
+import expression.IExpression;
+import expression.function.Find;
+import expression.function.IFunction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records what configuring the targets did to the build - the properties set, the files declared
+ * and provided, and the files each Find found - so the next build can replay it instead of
+ * configuring again.
+ *
+ * The recording is keyed by the contents of the match files declaring the configured targets and
+ * the options, and is only valid while every directory scanned by a Find is unmodified.
+ */
+public class ConfigurationCache {
+
+    public static final String CACHE_FILE = "out/match/configuration";
+
+    private static final String KEY = "key";
+    private static final String PROPERTY = "property";
+    private static final String ADD = "add";
+    private static final String PROVIDE = "provide";
+    private static final String DIRECTORY = "directory";
+    private static final String FIND = "find";
+
+    private final File mFile;
+    private final List<String[]> mEvents = Collections.synchronizedList(new ArrayList<String[]>());
+    private final Map<String, List<String>> mFinds = new HashMap<String, List<String>>();
+    private final Map<String, ITarget> mOwners = new ConcurrentHashMap<String, ITarget>();
+
+    public ConfigurationCache(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return a key identifying the match files' contents and the options.
+     */
+    public static String getKey(List<File> matchFiles, List<String> options) throws IOException {
+        MessageDigest digest = Utilities.newDigest();
+        digest.update(Utilities.join(" ", options).getBytes("UTF-8"));
+        digest.update((byte) 0);
+        for (File match : matchFiles) {
+            Utilities.digest(digest, match);
+        }
+        return Utilities.toHex(digest.digest());
+    }
+
+    /**
+     * Records a property being set while configuring.
+     */
+    public void setProperty(String key, String value) {
+        mEvents.add(new String[] {PROPERTY, key, value});
+    }
+
+    /**
+     * Records a file being declared while configuring, by the given target if it isn't null.
+     */
+    public void addFile(String file, ITarget owner) {
+        mEvents.add(new String[] {ADD, file});
+        if (owner != null) {
+            mOwners.put(file, owner);
+        }
+    }
+
+    /**
+     * Records a file being provided while configuring.
+     */
+    public void provideFile(String file) {
+        mEvents.add(new String[] {PROVIDE, file});
+    }
+
+    /**
+     * Loads the configuration recorded by a previous build.
+     *
+     * @return true iff the recording has the given key and is still valid.
+     */
+    public boolean read(String key) throws IOException {
+        mEvents.clear();
+        mFinds.clear();
+        mOwners.clear();
+        if (!mFile.exists()) {
+            return false;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(mFile));
+        try {
+            String line = reader.readLine();
+            if (line == null || !line.equals(KEY + "\t" + key)) {
+                return false;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields[0].equals(DIRECTORY)) {
+                    if (!fields[2].equals(Long.toString(getModified(new File(fields[1]))))) {
+                        return false;
+                    }
+                } else if (fields[0].equals(FIND)) {
+                    mFinds.put(fields[1], new ArrayList<String>(Arrays.asList(fields).subList(2, fields.length)));
+                } else {
+                    mEvents.add(fields);
+                }
+            }
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Replays the loaded configuration onto the build and its targets.
+     */
+    public void restore(IMatch match, List<ITarget> targets) {
+        for (String[] event : mEvents) {
+            if (event[0].equals(PROPERTY)) {
+                match.setProperty(event[1], event[2]);
+            } else if (event[0].equals(ADD)) {
+                match.addFile(event[1]);
+            } else if (event[0].equals(PROVIDE)) {
+                match.provideFile(event[1]);
+            }
+        }
+        for (Map.Entry<String, Find> find : getFinds(targets).entrySet()) {
+            List<String> files = mFinds.get(find.getKey());
+            if (files == null) {
+                match.error(String.format("configuration cache is missing %s", find.getKey()));
+            }
+            find.getValue().setFiles(files);
+        }
+    }
+
+    /**
+     * @return the target that declared each file, of those the loaded configuration records.
+     */
+    public Map<String, ITarget> getOwners(List<ITarget> targets) {
+        Map<String, ITarget> keys = new HashMap<String, ITarget>();
+        for (Map.Entry<ITarget, String> key : getKeys(targets).entrySet()) {
+            keys.put(key.getValue(), key.getKey());
+        }
+        Map<String, ITarget> owners = new HashMap<String, ITarget>();
+        for (String[] event : mEvents) {
+            if (event[0].equals(ADD) && event.length > 2 && keys.containsKey(event[2])) {
+                owners.put(event[1], keys.get(event[2]));
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Saves the recorded configuration of the given targets.
+     */
+    public void write(String key, List<ITarget> targets) throws IOException {
+        mFile.getParentFile().mkdirs();
+        PrintWriter writer = new PrintWriter(new FileWriter(mFile));
+        try {
+            writer.println(KEY + "\t" + key);
+            Map<ITarget, String> keys = getKeys(targets);
+            for (String[] event : mEvents) {
+                List<String> fields = new ArrayList<String>(Arrays.asList(event));
+                ITarget owner = event[0].equals(ADD) ? mOwners.get(event[1]) : null;
+                if (owner != null && keys.containsKey(owner)) {
+                    fields.add(keys.get(owner));
+                }
+                writer.println(Utilities.join("\t", fields));
+            }
+            for (Map.Entry<String, Find> find : getFinds(targets).entrySet()) {
+                for (String directory : find.getValue().getDirectories()) {
+                    writer.println(String.format("%s\t%s\t%d", DIRECTORY, directory, getModified(new File(directory))));
+                }
+                List<String> fields = new ArrayList<String>();
+                fields.add(FIND);
+                fields.add(find.getKey());
+                fields.addAll(find.getValue().getFiles());
+                writer.println(Utilities.join("\t", fields));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return every Find in the targets, keyed by its match file, the target's position in the
+     * match file and its position in the target.
+     */
+    static Map<String, Find> getFinds(List<ITarget> targets) {
+        Map<String, Find> finds = new LinkedHashMap<String, Find>();
+        for (Map.Entry<ITarget, String> key : getKeys(targets).entrySet()) {
+            List<Find> found = new ArrayList<Find>();
+            addFinds(key.getKey().getFunction(), found);
+            for (int i = 0; i < found.size(); i++) {
+                finds.put(String.format("%s#%d", key.getValue(), i), found.get(i));
+            }
+        }
+        return finds;
+    }
+
+    /**
+     * @return a key for each target, made of its match file and its position in the match file,
+     * which is stable between builds while the match files are unchanged.
+     */
+    private static Map<ITarget, String> getKeys(List<ITarget> targets) {
+        Map<ITarget, String> keys = new LinkedHashMap<ITarget, String>();
+        Map<File, Integer> positions = new HashMap<File, Integer>();
+        for (ITarget target : targets) {
+            Integer position = positions.get(target.getFile());
+            position = position == null ? 0 : position + 1;
+            positions.put(target.getFile(), position);
+            keys.put(target, String.format("%s#%d", target.getFile().getPath(), position));
+        }
+        return keys;
+    }
+
+    private static void addFinds(IExpression expression, List<Find> finds) {
+        if (expression instanceof Find) {
+            finds.add((Find) expression);
+        } else if (expression instanceof IFunction) {
+            for (IExpression parameter : ((IFunction) expression).getParameters().values()) {
+                addFinds(parameter, finds);
+            }
+        } else if (expression instanceof ExpressionList) {
+            for (IExpression element : ((ExpressionList) expression).getElements()) {
+                addFinds(element, finds);
+            }
+        }
+    }
+
+    private static long getModified(File directory) throws IOException {
+        if (!directory.exists()) {
+            return -1;
+        }
+        return Files.getLastModifiedTime(directory.toPath()).to(TimeUnit.NANOSECONDS);
+    }
+}
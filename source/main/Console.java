@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes console output from a single thread so targets printing concurrently never wait on each
+ * other for the console.
+ *
+ * Printing only appends to a lock free queue. The writer thread prints the lines of each target
+ * together once the target finishes, so the output of concurrent targets doesn't interleave, and
+ * keeps a line showing the progress of the build at the bottom of a terminal.
+ */
+public class Console {
+
+    public static final int WIDTH = 100;
+
+    private static final int LINE = 0;
+    private static final int START = 1;
+    private static final int FINISH = 2;
+    private static final int TOTAL = 3;
+    private static final int FLUSH = 4;
+    private static final long IDLE = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final String ERASE = "\r\033[K";
+
+    private final Queue<Entry> mQueue = new ConcurrentLinkedQueue<Entry>();
+    private final PrintStream mOut;
+    private final boolean mProgress;
+    private final Thread mThread;
+    private volatile boolean mClosed = false;
+    // Only used by the writer thread
+    private final Map<Object, List<String>> mGroups = new HashMap<Object, List<String>>();
+    private final Map<Object, String> mRunning = new LinkedHashMap<Object, String>();
+    private int mTotal = 0;
+    private int mDone = 0;
+    private String mShowing = null;
+
+    /**
+     * Starts writing to the given stream.
+     *
+     * @param progress whether to show a progress line, which is only sensible on a terminal.
+     */
+    public Console(PrintStream out, boolean progress) {
+        mOut = out;
+        mProgress = progress;
+        mThread = new Thread("console") {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * @return true iff the given stream is standard output and that is a terminal.
+     */
+    public static boolean isTerminal(PrintStream out) {
+        return out == System.out && System.console() != null;
+    }
+
+    /**
+     * Prints a line, held back until the given target finishes if the target isn't null.
+     */
+    public void println(Object target, String message) {
+        add(new Entry(LINE, target, message));
+    }
+
+    /**
+     * Marks the start of building the given target, shown by the given name.
+     */
+    public void start(Object target, String name) {
+        add(new Entry(START, target, name));
+    }
+
+    /**
+     * Marks the end of building the given target, printing the lines it held back.
+     */
+    public void finish(Object target) {
+        add(new Entry(FINISH, target, null));
+    }
+
+    /**
+     * Sets the number of targets being built, for the progress line.
+     */
+    public void setTotal(int total) {
+        add(new Entry(TOTAL, null, Integer.toString(total)));
+    }
+
+    /**
+     * Waits until everything queued so far has been written.
+     */
+    public void flush() {
+        Entry entry = new Entry(FLUSH, null, null);
+        entry.mFlushed = new CountDownLatch(1);
+        add(entry);
+        try {
+            entry.mFlushed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes everything queued, including the lines of targets that didn't finish, and stops.
+     */
+    public void close() {
+        mClosed = true;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void add(Entry entry) {
+        mQueue.add(entry);
+        if (entry.mKind != LINE) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    private void drain() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            boolean closed = mClosed;
+            List<CountDownLatch> flushed = new ArrayList<CountDownLatch>();
+            Entry entry;
+            while ((entry = mQueue.poll()) != null) {
+                switch (entry.mKind) {
+                    case LINE:
+                        List<String> group = entry.mTarget == null ? null : mGroups.get(entry.mTarget);
+                        if (group == null) {
+                            batch.append(entry.mText).append('\n');
+                        } else {
+                            group.add(entry.mText);
+                        }
+                        break;
+                    case START:
+                        mGroups.put(entry.mTarget, new ArrayList<String>());
+                        mRunning.put(entry.mTarget, entry.mText);
+                        break;
+                    case FINISH:
+                        release(entry.mTarget, batch);
+                        mRunning.remove(entry.mTarget);
+                        mDone++;
+                        break;
+                    case TOTAL:
+                        mTotal = Integer.parseInt(entry.mText);
+                        mDone = 0;
+                        break;
+                    case FLUSH:
+                        flushed.add(entry.mFlushed);
+                        break;
+                }
+            }
+            if (closed) {
+                for (Object target : new ArrayList<Object>(mGroups.keySet())) {
+                    release(target, batch);
+                }
+                mRunning.clear();
+            }
+            write(batch, !flushed.isEmpty() || closed);
+            for (CountDownLatch latch : flushed) {
+                latch.countDown();
+            }
+            if (closed) {
+                break;
+            }
+            LockSupport.parkNanos(this, IDLE);
+        }
+    }
+
+    private void release(Object target, StringBuilder batch) {
+        List<String> group = mGroups.remove(target);
+        if (group != null) {
+            for (String line : group) {
+                batch.append(line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes the batched lines above the progress line, which is removed if the console is idle.
+     */
+    private void write(StringBuilder batch, boolean idle) {
+        String progress = mProgress && !idle && !mRunning.isEmpty() ? getProgress(mDone, mTotal, mRunning.values()) : null;
+        if (batch.length() == 0 && (progress == null ? mShowing == null : progress.equals(mShowing))) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        if (mShowing != null) {
+            text.append(ERASE);
+        }
+        text.append(batch);
+        batch.setLength(0);
+        if (progress != null) {
+            text.append(progress);
+        }
+        mShowing = progress;
+        mOut.print(text);
+        mOut.flush();
+    }
+
+    /**
+     * @return a line of at most WIDTH characters showing how many targets are done and which are
+     * running.
+     */
+    static String getProgress(int done, int total, Iterable<String> running) {
+        StringBuilder line = new StringBuilder(String.format("[%d/%d] ", done, total));
+        int shown = 0;
+        int count = 0;
+        for (String target : running) {
+            count++;
+            if (count > 1 && line.length() + target.length() + 2 > WIDTH - 6) {
+                continue;
+            }
+            line.append(shown == 0 ? "" : ", ").append(target);
+            shown++;
+        }
+        if (shown < count) {
+            line.append(String.format(" +%d", count - shown));
+        }
+        return line.length() > WIDTH ? line.substring(0, WIDTH) : line.toString();
+    }
+
+    private static class Entry {
+        private final int mKind;
+        private final Object mTarget;
+        private final String mText;
+        private CountDownLatch mFlushed;
+        Entry(int kind, Object target, String text) {
+            mKind = kind;
+            mTarget = target;
+            mText = text;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * A long running build server that keeps the JVM, the in-process compiler and the configured
+ * build graph warm between builds.
+ *
+ * Clients connect on the loopback port written to out/match/daemon, send the token written to
+ * out/match/daemon.token and a single command line, and receive the build output, followed by a
+ * status line. Only the user running the daemon can read the token, so other users of the machine
+ * can't build in, or stop, someone else's workspace.
+ */
+public class Daemon {
+
+    public static final String PORT_FILE = "out/match/daemon";
+    public static final String TOKEN_FILE = "out/match/daemon.token";
+    public static final String BUILD = "build";
+    public static final String STOP = "stop";
+    public static final String STATUS = "#status ";
+    public static final long DEFAULT_IDLE = 30 * 60;
+
+    private static final int POLL_INTERVAL = 1000;
+    private static final int TOKEN_BYTES = 32;
+
+    private final File mRoot;
+    private final long mIdle;
+    private final JavaCompiler mCompiler = ToolProvider.getSystemJavaCompiler();
+    private WatchService mWatcher;
+    private Match mMatch;
+    private List<ITarget> mTargets;
+    private List<String> mOptions;
+    private byte[] mToken;
+    private volatile boolean mRunning = true;
+
+    /**
+     * @param idle the number of seconds without a request after which the daemon exits.
+     */
+    public Daemon(File root, long idle) {
+        mRoot = root;
+        mIdle = idle * 1000;
+    }
+
+    /**
+     * Accepts requests until stopped or idle for too long.
+     */
+    public void serve() throws IOException {
+        mWatcher = FileSystems.getDefault().newWatchService();
+        watch(mRoot);
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(POLL_INTERVAL);
+        File portFile = new File(mRoot, PORT_FILE);
+        portFile.getParentFile().mkdirs();
+        // The token has to be in place before clients find the port
+        File tokenFile = new File(mRoot, TOKEN_FILE);
+        writeToken(tokenFile);
+        FileWriter writer = new FileWriter(portFile);
+        writer.write(Integer.toString(server.getLocalPort()));
+        writer.close();
+        long last = System.currentTimeMillis();
+        try {
+            while (mRunning && System.currentTimeMillis() - last < mIdle) {
+                try {
+                    Socket socket = server.accept();
+                    try {
+                        handle(socket);
+                    } finally {
+                        socket.close();
+                    }
+                    last = System.currentTimeMillis();
+                } catch (SocketTimeoutException e) {
+                    // Check for idleness and changes
+                }
+                poll();
+            }
+        } finally {
+            server.close();
+            mWatcher.close();
+            portFile.delete();
+            tokenFile.delete();
+        }
+    }
+
+    /**
+     * Writes a new random token to a file only the current user can read.
+     */
+    private void writeToken(File file) throws IOException {
+        byte[] token = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(token);
+        mToken = Utilities.toHex(token).getBytes("UTF-8");
+        Path path = file.toPath();
+        // Create the file afresh, so it can't be one another user made readable beforehand
+        Files.deleteIfExists(path);
+        Files.createFile(path, PosixFilePermissions.asFileAttribute(
+                EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        Files.write(path, mToken);
+    }
+
+    private void handle(Socket socket) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        PrintStream out = new PrintStream(socket.getOutputStream(), true);
+        String token = reader.readLine();
+        if (token == null || !MessageDigest.isEqual(mToken, token.trim().getBytes("UTF-8"))) {
+            out.println("error: wrong token");
+            out.println(STATUS + 1);
+            return;
+        }
+        String request = reader.readLine();
+        if (request == null) {
+            return;
+        }
+        String[] arguments = request.trim().split("\\s+");
+        if (arguments[0].equals(STOP)) {
+            mRunning = false;
+            out.println(STATUS + 0);
+        } else if (arguments[0].equals(BUILD)) {
+            List<String> options = Arrays.asList(arguments).subList(1, arguments.length);
+            out.println(STATUS + build(options, out));
+        } else {
+            out.println(String.format("error: unknown command %s", arguments[0]));
+            out.println(STATUS + 1);
+        }
+    }
+
+    private int build(List<String> options, PrintStream out) {
+        long start = System.currentTimeMillis();
+        poll();
+        try {
+            boolean load = mMatch == null || !options.equals(mOptions);
+            if (load) {
+                mOptions = options;
+                mMatch = new Match(mRoot);
+                mMatch.setOptions(options);
+                mMatch.setCompiler(mCompiler);
+            }
+            mMatch.setOutput(out);
+            try {
+                mMatch.begin();
+                if (load) {
+                    mTargets = mMatch.load();
+                } else {
+                    mMatch.reset(mTargets);
+                }
+                mMatch.build(mTargets);
+                mMatch.done(start);
+            } finally {
+                mMatch.end();
+            }
+            return 0;
+        } catch (RuntimeException e) {
+            // The graph may be half configured or half built, start again next time.
+            mMatch = null;
+            out.println(String.format("error: %s", e.getMessage()));
+            return 1;
+        }
+    }
+
+    /**
+     * Drops the configured graph if files were added or removed, or a match file changed.
+     */
+    private void poll() {
+        WatchKey key;
+        while ((key = mWatcher.poll()) != null) {
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    mMatch = null;
+                    continue;
+                }
+                Path path = directory.resolve((Path) event.context());
+                String name = path.getFileName().toString();
+                if (name.matches("\\..*") || (directory.equals(mRoot.toPath()) && name.equals("out"))) {
+                    continue;
+                }
+                if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+                    if (name.equals(Match.MATCH)) {
+                        mMatch = null;
+                    }
+                } else {
+                    mMatch = null;
+                    if (kind == StandardWatchEventKinds.ENTRY_CREATE && path.toFile().isDirectory()) {
+                        watch(path.toFile());
+                    }
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void watch(File directory) {
+        try {
+            directory.toPath().register(mWatcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            boolean skip = directory.equals(mRoot) && name.equals("out");
+            if (child.isDirectory() && !name.matches("\\..*") && !skip) {
+                watch(child);
+            }
+        }
+    }
+
+    public static void main(String args[]) throws IOException {
+        File root = new File(args[0]);
+        long idle = DEFAULT_IDLE;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--idle")) {
+                idle = Long.parseLong(args[++i]);
+            }
+        }
+        new Daemon(root, idle).serve();
+    }
+}
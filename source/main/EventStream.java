@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams build events as JSON lines to a file or a local socket.
+ *
+ * Emitting an event only appends it to a lock free queue; a dedicated thread formats and writes
+ * the events, so a slow consumer never holds up the build. Events are dropped once the queue is
+ * full or the consumer has gone away.
+ */
+public class EventStream {
+
+    public static final String PHASE = "phase";
+    public static final String TARGET_STARTED = "target_started";
+    public static final String TARGET_FINISHED = "target_finished";
+    public static final String TARGET_CACHED = "target_cached";
+    public static final String COMMAND_LAUNCHED = "command_launched";
+    public static final String COMMAND_EXITED = "command_exited";
+    public static final String FILE_PROVIDED = "file_provided";
+    public static final String CACHE_HIT = "cache_hit";
+    public static final String CACHE_MISS = "cache_miss";
+
+    /**
+     * Prefix of a destination naming a port on the loopback address instead of a file.
+     */
+    public static final String TCP = "tcp:";
+
+    private static final long IDLE = TimeUnit.MILLISECONDS.toNanos(10);
+    // Events beyond this many waiting to be written are dropped, rather than held in memory
+    private static final int CAPACITY = 1 << 16;
+
+    private final Queue<Object[]> mQueue = new ConcurrentLinkedQueue<Object[]>();
+    private final AtomicInteger mQueued = new AtomicInteger();
+    private final Writer mWriter;
+    private final Thread mThread;
+    private volatile boolean mClosed = false;
+    private volatile boolean mFailed = false;
+
+    /**
+     * Starts streaming to the given destination, either a file, which is appended to, or
+     * tcp:port.
+     */
+    public EventStream(String destination) throws IOException {
+        OutputStream output;
+        if (destination.startsWith(TCP)) {
+            int port = Integer.parseInt(destination.substring(TCP.length()));
+            output = new Socket(InetAddress.getLoopbackAddress(), port).getOutputStream();
+        } else {
+            File file = new File(destination);
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            output = new FileOutputStream(file, true);
+        }
+        mWriter = new BufferedWriter(new OutputStreamWriter(output, "UTF-8"));
+        mThread = new Thread("events") {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queues an event with the given fields, alternating names and values.
+     */
+    public void emit(String event, Object... fields) {
+        if (mFailed || mQueued.get() >= CAPACITY) {
+            return;
+        }
+        Object[] entry = new Object[fields.length + 2];
+        entry[0] = System.currentTimeMillis();
+        entry[1] = event;
+        System.arraycopy(fields, 0, entry, 2, fields.length);
+        mQueued.incrementAndGet();
+        mQueue.add(entry);
+    }
+
+    /**
+     * Writes the remaining events and closes the destination.
+     */
+    public void close() {
+        mClosed = true;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of events waiting to be written.
+     */
+    int getQueued() {
+        return mQueued.get();
+    }
+
+    /**
+     * @return true iff writing failed, so events are dropped.
+     */
+    boolean hasFailed() {
+        return mFailed;
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                boolean closed = mClosed;
+                Object[] entry;
+                boolean wrote = false;
+                while ((entry = mQueue.poll()) != null) {
+                    mQueued.decrementAndGet();
+                    mWriter.write(format(entry));
+                    mWriter.write('\n');
+                    wrote = true;
+                }
+                if (wrote) {
+                    mWriter.flush();
+                }
+                if (closed) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE);
+            }
+        } catch (IOException e) {
+            // The consumer went away, the build carries on without it
+            mFailed = true;
+            mQueue.clear();
+            mQueued.set(0);
+        } finally {
+            try {
+                mWriter.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    static String format(Object[] entry) {
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("{\"time\":%d,\"event\":%s", entry[0], Profile.quote((String) entry[1])));
+        for (int i = 2; i + 1 < entry.length; i += 2) {
+            Object value = entry[i + 1];
+            line.append(',').append(Profile.quote((String) entry[i])).append(':');
+            if (value instanceof Number) {
+                line.append(value);
+            } else {
+                line.append(value == null ? "null" : Profile.quote(value.toString()));
+            }
+        }
+        return line.append('}').toString();
+    }
+}
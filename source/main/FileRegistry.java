@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tracks which files of the build have been declared and provided.
+ *
+ * Files are interned in a PathTable and their state kept in bit sets, so the thousands of source
+ * files that are provided before building starts cost a few bytes each. A future is only created
+ * for a file a target is waiting for, and is dropped once the file is provided.
+ */
+public class FileRegistry {
+
+    private static final CompletableFuture<Void> PROVIDED = CompletableFuture.completedFuture(null);
+
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+    private final PathTable mPaths = new PathTable();
+    private final BitSet mDeclared = new BitSet();
+    private final BitSet mProvided = new BitSet();
+    private BitSet mConfigured = new BitSet();
+    private final Map<Integer, CompletableFuture<Void>> mWaiting = new HashMap<Integer, CompletableFuture<Void>>();
+    private final Map<Integer, Throwable> mFailed = new HashMap<Integer, Throwable>();
+    private Throwable mCancelled;
+
+    /**
+     * Declares the given file, which isn't available until it is provided.
+     *
+     * @return the ID of the file.
+     */
+    public int add(String file) {
+        mLock.writeLock().lock();
+        try {
+            int id = mPaths.intern(file);
+            mDeclared.set(id);
+            mProvided.clear(id);
+            mFailed.remove(id);
+            return id;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes the given file available to the targets waiting for it.
+     *
+     * @return false if the file wasn't declared.
+     */
+    public boolean provide(String file) {
+        CompletableFuture<Void> waiting;
+        mLock.writeLock().lock();
+        try {
+            int id = mPaths.find(file);
+            if (id == -1 || !mDeclared.get(id)) {
+                return false;
+            }
+            mProvided.set(id);
+            waiting = mWaiting.remove(id);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        if (waiting != null) {
+            // Outside the lock, as it runs whatever was composed on the future
+            waiting.complete(null);
+        }
+        return true;
+    }
+
+    /**
+     * @return a future completed when the given file is provided, or null if the file wasn't
+     * declared.
+     */
+    public CompletableFuture<Void> get(String file) {
+        mLock.readLock().lock();
+        try {
+            int id = mPaths.find(file);
+            if (id == -1 || !mDeclared.get(id)) {
+                return null;
+            }
+            if (mProvided.get(id)) {
+                return PROVIDED;
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+        mLock.writeLock().lock();
+        try {
+            int id = mPaths.find(file);
+            if (mProvided.get(id)) {
+                return PROVIDED;
+            }
+            Throwable failure = mFailed.containsKey(id) ? mFailed.get(id) : mCancelled;
+            if (failure != null) {
+                CompletableFuture<Void> failed = new CompletableFuture<Void>();
+                failed.completeExceptionally(failure);
+                return failed;
+            }
+            CompletableFuture<Void> waiting = mWaiting.get(id);
+            if (waiting == null) {
+                waiting = new CompletableFuture<Void>();
+                mWaiting.put(id, waiting);
+            }
+            return waiting;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Fails the given file, unless it has already been provided, so the targets waiting for it
+     * stop waiting.
+     */
+    public void fail(String file, Throwable cause) {
+        CompletableFuture<Void> waiting = null;
+        mLock.writeLock().lock();
+        try {
+            int id = mPaths.find(file);
+            if (id != -1 && !mProvided.get(id)) {
+                mFailed.put(id, cause);
+                waiting = mWaiting.remove(id);
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        if (waiting != null) {
+            waiting.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Fails every file that hasn't been provided.
+     */
+    public void failAll(Throwable cause) {
+        Map<Integer, CompletableFuture<Void>> waiting;
+        mLock.writeLock().lock();
+        try {
+            mCancelled = cause;
+            waiting = new HashMap<Integer, CompletableFuture<Void>>(mWaiting);
+            mWaiting.clear();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        for (CompletableFuture<Void> future : waiting.values()) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Remembers which files are provided, as the files available before building.
+     */
+    public void snapshot() {
+        mLock.writeLock().lock();
+        try {
+            mConfigured = (BitSet) mProvided.clone();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns to the state of the last snapshot, so only the files available before building are
+     * provided.
+     */
+    public void reset() {
+        mLock.writeLock().lock();
+        try {
+            mProvided.clear();
+            mProvided.or(mConfigured);
+            mFailed.clear();
+            mWaiting.clear();
+            mCancelled = null;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the path of the file with the given ID.
+     */
+    public String getPath(int id) {
+        mLock.readLock().lock();
+        try {
+            return mPaths.getPath(id);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+}
@@ -15,6 +15,10 @@
  */
 package main;
 
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 public interface IMatch {
 
     /**
@@ -27,6 +31,11 @@ public interface IMatch {
      */
     void setProperty(String key, String value);
 
+    /**
+     * Returns true iff the option was given on the command line.
+     */
+    boolean hasOption(String name);
+
     /**
      * Prints the warning to the console.
      */
@@ -64,8 +73,51 @@ public interface IMatch {
      */
     void awaitFile(String file);
 
+    /**
+     * Waits until all the given files have been created.
+     */
+    void awaitFiles(Collection<String> files);
+
+    /**
+     * @return a future completed when the given file is provided, or completed exceptionally if
+     * the target that should provide it fails.
+     */
+    CompletableFuture<Void> getFile(String file);
+
+    /**
+     * Records a file the building target produced without providing it, like a class file, so
+     * it is removed once no target produces it.
+     */
+    void addOutput(String file);
+
+    /**
+     * @return the files the building target produced in the previous build.
+     */
+    Set<String> getPreviousOutputs();
+
     /**
      * Runs the given command.
      */
     void runCommand(String command);
+
+    /**
+     * Tracks a process the building target started outside of runCommand, so cancelling the
+     * build kills it.
+     */
+    void addProcess(Process process);
+
+    /**
+     * Stops tracking a process given to addProcess.
+     */
+    void removeProcess(Process process);
+
+    /**
+     * Records an event, like a cache hit, in the build event stream.
+     */
+    void event(String event, String detail);
+
+    /**
+     * Records a span of work in the build profile, from the given System.nanoTime() until now.
+     */
+    void profile(String category, String name, long start);
 }
@@ -18,6 +18,7 @@ package main;
 import expression.function.IFunction;
 
 import java.io.File;
+import java.util.List;
 
 public interface ITarget {
 
@@ -26,6 +27,26 @@ public interface ITarget {
      */
     File getFile();
 
+    /**
+     * @return the line of the match file this target starts on.
+     */
+    int getLine();
+
+    /**
+     * @return the name of this target, or null if it isn't named.
+     */
+    String getName();
+
+    /**
+     * @return the names of the targets this target depends on.
+     */
+    List<String> getDependencies();
+
+    /**
+     * @return the function that will build this target.
+     */
+    IFunction getFunction();
+
     /**
      * Sets the function that will build this target.
      */
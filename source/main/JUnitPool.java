@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A pool of long lived JVMs that run JUnit tests, so tests run out of process without paying for
+ * a cold JVM each time.
+ *
+ * Each request is loaded in a fresh class loader by JUnitRunner, and a worker is retired after a
+ * number of runs so tests leaking static state or threads can't accumulate indefinitely.
+ */
+public final class JUnitPool {
+
+    private static final int PASSED = 0;
+    private static final int FAILED = 1;
+    private static final int ERROR = 2;
+
+    // At most one worker per build thread, so the pool can't outgrow the build
+    private static final int MAX_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private static final Deque<Worker> sIdle = new ArrayDeque<Worker>();
+    private static final Semaphore sWorkers = new Semaphore(MAX_WORKERS);
+    private static boolean sHooked = false;
+
+    private JUnitPool() {}
+
+    /**
+     * Runs the tests in the given classes on an idle worker, starting one if none is idle and the
+     * pool isn't full, and prints the results in the same format as JUnitCore. The worker is
+     * tracked by the given match while it runs, so cancelling the build kills it.
+     *
+     * @param runs the number of runs after which the worker is retired.
+     * @return true iff all the tests passed.
+     */
+    public static boolean run(List<String> classpath, List<String> classes, PrintStream out, int runs, IMatch match) throws Exception {
+        sWorkers.acquire();
+        int status;
+        byte[] results;
+        try {
+            Worker worker = take();
+            match.addProcess(worker.mProcess);
+            try {
+                status = worker.run(classpath, classes);
+                results = worker.read();
+            } catch (IOException e) {
+                worker.close();
+                throw e;
+            } finally {
+                match.removeProcess(worker.mProcess);
+            }
+            if (worker.mRuns >= runs) {
+                worker.close();
+            } else {
+                give(worker);
+            }
+        } finally {
+            sWorkers.release();
+        }
+        if (status == ERROR) {
+            throw new Exception(new String(results, "UTF-8"));
+        }
+        out.write(results);
+        out.flush();
+        return status == PASSED;
+    }
+
+    /**
+     * Stops every idle worker.
+     */
+    public static synchronized void shutdown() {
+        while (!sIdle.isEmpty()) {
+            sIdle.pop().close();
+        }
+    }
+
+    static synchronized int getIdleCount() {
+        return sIdle.size();
+    }
+
+    private static synchronized Worker take() throws Exception {
+        if (!sHooked) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    shutdown();
+                }
+            });
+            sHooked = true;
+        }
+        while (!sIdle.isEmpty()) {
+            Worker worker = sIdle.pop();
+            // A worker may have been killed by a cancelled build just as it finished
+            if (worker.mProcess.isAlive()) {
+                return worker;
+            }
+            worker.close();
+        }
+        return new Worker();
+    }
+
+    private static synchronized void give(Worker worker) {
+        sIdle.push(worker);
+    }
+
+    private static class Worker {
+        private final Process mProcess;
+        private final DataOutputStream mOut;
+        private final DataInputStream mIn;
+        private int mRuns = 0;
+
+        Worker() throws Exception {
+            String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+            String runner = new File(JUnitPool.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", runner, JUnitPool.class.getName());
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            mProcess = builder.start();
+            mOut = new DataOutputStream(new BufferedOutputStream(mProcess.getOutputStream()));
+            mIn = new DataInputStream(new BufferedInputStream(mProcess.getInputStream()));
+        }
+
+        int run(List<String> classpath, List<String> classes) throws IOException {
+            mRuns++;
+            writeString(mOut, Utilities.join(":", classpath));
+            mOut.writeInt(classes.size());
+            for (String name : classes) {
+                writeString(mOut, name);
+            }
+            mOut.flush();
+            return mIn.readUnsignedByte();
+        }
+
+        byte[] read() throws IOException {
+            byte[] results = new byte[mIn.readInt()];
+            mIn.readFully(results);
+            return results;
+        }
+
+        void close() {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                // The worker has already gone
+            }
+            mProcess.destroy();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Serves requests from the pool until standard input is closed.
+     *
+     * Each request is a classpath and a list of test classes; each response is a status byte and
+     * the results. Anything the tests print goes into the results, not the response stream.
+     */
+    public static void main(String args[]) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        PrintStream stdout = System.out;
+        while (true) {
+            String classpath;
+            try {
+                classpath = readString(in);
+            } catch (EOFException e) {
+                return;
+            }
+            List<String> classes = new ArrayList<String>();
+            for (int i = in.readInt(); i > 0; i--) {
+                classes.add(readString(in));
+            }
+            ByteArrayOutputStream results = new ByteArrayOutputStream();
+            PrintStream print = new PrintStream(results, true);
+            System.setOut(print);
+            int status;
+            try {
+                status = JUnitRunner.run(Arrays.asList(classpath.split(":")), classes, print) ? PASSED : FAILED;
+            } catch (Throwable t) {
+                t.printStackTrace(print);
+                status = ERROR;
+            } finally {
+                System.setOut(stdout);
+            }
+            print.close();
+            out.writeByte(status);
+            out.writeInt(results.size());
+            results.writeTo(out);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs JUnit tests in the current JVM.
+ *
+ * Match doesn't depend on JUnit, so JUnit is loaded reflectively along with the tests in a new
+ * class loader, isolating every run from Match and from other runs.
+ *
+ * What the tests print to System.out and System.err goes to the results, as it would in a forked
+ * JVM. Other threads of this JVM, including other runs, keep printing to their own streams.
+ */
+public final class JUnitRunner {
+
+    // The results the current thread, and the threads it starts, print to
+    private static final InheritableThreadLocal<Capture> sCapture = new InheritableThreadLocal<Capture>();
+    private static PrintStream sOut;
+    private static PrintStream sErr;
+
+    private JUnitRunner() {}
+
+    /**
+     * Runs the tests in the given classes, printing the results in the same format as JUnitCore.
+     *
+     * @return true iff all the tests passed.
+     */
+    public static boolean run(List<String> classpath, List<String> classes, PrintStream out) throws Exception {
+        return run(classpath, classes, out, new HashMap<String, Long>());
+    }
+
+    /**
+     * Runs the tests in the given classes, printing the results in the same format as JUnitCore
+     * and recording how many milliseconds each class took.
+     *
+     * @return true iff all the tests passed.
+     */
+    public static boolean run(List<String> classpath, List<String> classes, PrintStream out, Map<String, Long> durations) throws Exception {
+        URLClassLoader loader = createClassLoader(classpath);
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        Capture capture = capture(out);
+        try {
+            Class<?> version = loader.loadClass("junit.runner.Version");
+            out.println("JUnit version " + version.getMethod("id").invoke(null));
+            Class<?> listener = loader.loadClass("org.junit.runner.notification.RunListener");
+            Class<?> text = loader.loadClass("org.junit.internal.TextListener");
+            Class<?> notifierClass = loader.loadClass("org.junit.runner.notification.RunNotifier");
+            Class<?> resultClass = loader.loadClass("org.junit.runner.Result");
+            Class<?> description = loader.loadClass("org.junit.runner.Description");
+            Class<?> request = loader.loadClass("org.junit.runner.Request");
+            Class<?> runner = loader.loadClass("org.junit.runner.Runner");
+            Object result = resultClass.getConstructor().newInstance();
+            Object notifier = notifierClass.getConstructor().newInstance();
+            Method addListener = notifierClass.getMethod("addListener", listener);
+            addListener.invoke(notifier, resultClass.getMethod("createListener").invoke(result));
+            addListener.invoke(notifier, text.getConstructor(PrintStream.class).newInstance(out));
+            // Drive the classes one at a time, as JUnitCore would drive a suite, to time each one
+            notifierClass.getMethod("fireTestRunStarted", description).invoke(notifier, description.getField("EMPTY").get(null));
+            for (String name : classes) {
+                Class<?> test = loader.loadClass(name);
+                long start = System.currentTimeMillis();
+                Object classRequest = request.getMethod("aClass", Class.class).invoke(null, test);
+                Object classRunner = request.getMethod("getRunner").invoke(classRequest);
+                runner.getMethod("run", notifierClass).invoke(classRunner, notifier);
+                durations.put(name, System.currentTimeMillis() - start);
+            }
+            notifierClass.getMethod("fireTestRunFinished", resultClass).invoke(notifier, result);
+            return (Boolean) resultClass.getMethod("wasSuccessful").invoke(result);
+        } finally {
+            // Threads the tests left running mustn't print to the results anymore
+            capture.mOut = null;
+            sCapture.remove();
+            thread.setContextClassLoader(previous);
+            loader.close();
+        }
+    }
+
+    /**
+     * Sends what the current thread, and the threads it starts, print to the given stream.
+     */
+    private static synchronized Capture capture(PrintStream out) {
+        if (sOut == null) {
+            sOut = new PrintStream(new Redirect(System.out), true);
+            sErr = new PrintStream(new Redirect(System.err), true);
+            System.setOut(sOut);
+            System.setErr(sErr);
+        }
+        Capture capture = new Capture();
+        // Printing the results to System.out already prints them where System.out goes
+        if (out != sOut && out != sErr) {
+            capture.mOut = out;
+        }
+        sCapture.set(capture);
+        return capture;
+    }
+
+    private static class Capture {
+        volatile PrintStream mOut;
+    }
+
+    /**
+     * Writes to the stream capturing the current thread, or to the given stream if there isn't one.
+     */
+    private static class Redirect extends OutputStream {
+
+        private final PrintStream mDefault;
+
+        Redirect(PrintStream stream) {
+            mDefault = stream;
+        }
+
+        private PrintStream getStream() {
+            Capture capture = sCapture.get();
+            PrintStream out = capture == null ? null : capture.mOut;
+            return out == null ? mDefault : out;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(int b) {
+            getStream().write(b);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            getStream().write(bytes, offset, length);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void flush() {
+            getStream().flush();
+        }
+    }
+
+    /**
+     * Lists the test classes run by the given class, expanding suites.
+     */
+    public static List<String> getTestClasses(List<String> classpath, String mainClass) throws Exception {
+        URLClassLoader loader = createClassLoader(classpath);
+        try {
+            Class<? extends Annotation> suite = loader.loadClass("org.junit.runners.Suite$SuiteClasses").asSubclass(Annotation.class);
+            List<String> classes = new ArrayList<String>();
+            addTestClasses(loader.loadClass(mainClass), suite, classes);
+            return classes;
+        } finally {
+            loader.close();
+        }
+    }
+
+    private static void addTestClasses(Class<?> test, Class<? extends Annotation> suite, List<String> classes) throws Exception {
+        Annotation annotation = test.getAnnotation(suite);
+        if (annotation == null) {
+            classes.add(test.getName());
+            return;
+        }
+        for (Class<?> child : (Class<?>[]) suite.getMethod("value").invoke(annotation)) {
+            addTestClasses(child, suite, classes);
+        }
+    }
+
+    private static URLClassLoader createClassLoader(List<String> classpath) throws Exception {
+        URL[] urls = new URL[classpath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = new File(classpath.get(i)).toURI().toURL();
+        }
+        // Parent on the platform class loader so the tests can't see Match's classes
+        return new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+    }
+
+    /**
+     * Reads the milliseconds each test class took, as written by writeDurations.
+     */
+    public static Map<String, Long> readDurations(File file) throws IOException {
+        Map<String, Long> durations = new HashMap<String, Long>();
+        if (file.exists()) {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    durations.put(fields[0], Long.parseLong(fields[1]));
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Writes the milliseconds each test class took.
+     */
+    public static void writeDurations(File file, Map<String, Long> durations) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            for (Map.Entry<String, Long> duration : durations.entrySet()) {
+                writer.println(String.format("%s\t%d", duration.getKey(), duration.getValue()));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Runs tests in a forked JVM.
+     *
+     * Usage: JUnitRunner &lt;durations file&gt; &lt;classpath&gt; &lt;test class&gt;+
+     */
+    public static void main(String args[]) throws Exception {
+        List<String> classpath = Arrays.asList(args[1].split(":"));
+        List<String> classes = Arrays.asList(args).subList(2, args.length);
+        Map<String, Long> durations = new HashMap<String, Long>();
+        boolean passed = run(classpath, classes, System.out, durations);
+        writeDurations(new File(args[0]), durations);
+        System.exit(passed ? 0 : 1);
+    }
+}
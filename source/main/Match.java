@@ -16,14 +16,42 @@
 package main;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.JavaCompiler;
 
 import frontend.Category;
 import frontend.Lexem;
@@ -33,6 +61,13 @@ import frontend.Parser;
 public class Match implements IMatch {
 
     public static final String MATCH = "match";
+    public static final String JAVAC = "javac ";
+    public static final String LAZY = "lazy";
+    public static final String RECONFIGURE = "reconfigure";
+    public static final String KEEP_GOING = "keep-going";
+    public static final String PROFILE = "profile";
+    public static final String EVENTS = "events";
+    public static final String METRICS_PORT = "metrics-port";
     public static final List<Lexem> LEXEMS = new ArrayList<Lexem>();
     static {
         LEXEMS.add(new Lexem(Category.NEWLINE, "\n"));
@@ -50,9 +85,39 @@ public class Match implements IMatch {
 
     private File mRoot;
     private Map<String, String> mProperties = new ConcurrentHashMap<String, String>();
-    private Map<String, CountDownLatch> mFiles = new ConcurrentHashMap<String, CountDownLatch>();
+    private final FileRegistry mFiles = new FileRegistry();
+    private final Map<String, ITarget> mPropertyOwners = new HashMap<String, ITarget>();
+    private final Map<String, ITarget> mFileOwners = new ConcurrentHashMap<String, ITarget>();
+    private final ThreadLocal<ITarget> mConfiguring = new ThreadLocal<ITarget>();
+    // Properties that configuring targets are waiting for, guarded by mPropertyOwners
+    private final Map<String, List<CompletableFuture<String>>> mPropertyWaits = new HashMap<String, List<CompletableFuture<String>>>();
+    private int mUnconfigured = 0;
+    private int mWaiting = 0;
+    // Inherited so the threads a target starts, like test shards, are attributed to it
+    private final ThreadLocal<ITarget> mBuilding = new InheritableThreadLocal<ITarget>();
     private final List<File> mMatchFiles = new ArrayList<File>();
-    private final List<File> mAllFiles = new ArrayList<File>();
+    private final BitSet mScanned = new BitSet();
+    private final List<String> mRequested = new ArrayList<String>();
+    private final Set<String> mOptions = new HashSet<String>();
+    private boolean mLazy = false;
+    private boolean mReconfigure = false;
+    private boolean mKeepGoing = false;
+    private volatile boolean mCancelled = false;
+    private final Queue<String> mFailures = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger mStopped = new AtomicInteger();
+    private final Set<Process> mProcesses = ConcurrentHashMap.newKeySet();
+    private volatile ConfigurationCache mRecording;
+    private volatile BuildReport mReport = new BuildReport();
+    private volatile OutputManifest mOutputs;
+    private Profile mProfile;
+    private File mProfileFile;
+    private String mEventDestination;
+    private volatile EventStream mEvents;
+    private final BuildMetrics mMetrics = new BuildMetrics();
+    private int mMetricsPort = -1;
+    private PrintStream mOut = System.out;
+    private volatile Console mConsole;
+    private JavaCompiler mCompiler;
     public boolean mQuiet = false;
 
     public Match(File root) {
@@ -60,7 +125,211 @@ public class Match implements IMatch {
     }
 
     List<File> getAllFiles() {
-        return mAllFiles;
+        List<File> files = new ArrayList<File>();
+        for (int id = mScanned.nextSetBit(0); id >= 0; id = mScanned.nextSetBit(id + 1)) {
+            files.add(new File(mFiles.getPath(id)));
+        }
+        return files;
+    }
+
+    List<File> getMatchFiles() {
+        return mMatchFiles;
+    }
+
+    /**
+     * Applies the command line options following the workspace root.
+     */
+    void setOptions(List<String> options) {
+        List<String> targets = new ArrayList<String>();
+        mOptions.clear();
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if (option.equals("--" + PROFILE) && i + 1 < options.size()) {
+                File file = new File(options.get(++i));
+                setProfile(file.isAbsolute() ? file : new File(mRoot, file.getPath()));
+            } else if (option.equals("--" + EVENTS) && i + 1 < options.size()) {
+                String destination = options.get(++i);
+                File file = new File(destination);
+                if (!destination.startsWith(EventStream.TCP) && !file.isAbsolute()) {
+                    destination = new File(mRoot, destination).getPath();
+                }
+                setEvents(destination);
+            } else if (option.equals("--" + METRICS_PORT) && i + 1 < options.size()) {
+                try {
+                    setMetricsPort(Integer.parseInt(options.get(++i)));
+                } catch (NumberFormatException e) {
+                    error(String.format("invalid metrics port %s", options.get(i)));
+                }
+            } else if (option.startsWith("--")) {
+                mOptions.add(option.substring(2));
+            } else {
+                targets.add(option);
+            }
+        }
+        setLazy(hasOption(LAZY));
+        setReconfigure(hasOption(RECONFIGURE));
+        setKeepGoing(hasOption(KEEP_GOING));
+        setTargets(targets);
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public boolean hasOption(String name) {
+        return mOptions.contains(name);
+    }
+
+    /**
+     * Restricts the build to the given targets and the targets they depend on.
+     *
+     * An empty list builds every target.
+     */
+    void setTargets(List<String> targets) {
+        mRequested.clear();
+        mRequested.addAll(targets);
+    }
+
+    /**
+     * Configures every target instead of reusing the configuration of the previous build.
+     */
+    void setReconfigure(boolean reconfigure) {
+        mReconfigure = reconfigure;
+    }
+
+    /**
+     * Carries on building the targets that don't depend on a failed target, instead of cancelling
+     * the build when the first target fails.
+     */
+    void setKeepGoing(boolean keepGoing) {
+        mKeepGoing = keepGoing;
+    }
+
+    /**
+     * Only parses the match files needed by the requested targets, using the target index.
+     */
+    void setLazy(boolean lazy) {
+        mLazy = lazy;
+    }
+
+    /**
+     * Records a profile of the build, written to the given file when the build finishes.
+     */
+    void setProfile(File file) {
+        mProfileFile = file;
+        mProfile = file == null ? null : new Profile();
+    }
+
+    /**
+     * Streams build events to the given file or tcp:port while building.
+     */
+    void setEvents(String destination) {
+        mEventDestination = destination;
+    }
+
+    /**
+     * Serves the build metrics in the Prometheus text format on the given loopback port while
+     * building, 0 choosing any free port.
+     */
+    void setMetricsPort(int port) {
+        mMetricsPort = port;
+    }
+
+    /**
+     * Publishes the build metrics over JMX, and over HTTP if a port was requested.
+     */
+    private void startMetrics() {
+        mMetrics.reset();
+        mMetrics.register();
+        if (mMetricsPort < 0) {
+            return;
+        }
+        try {
+            int port = mMetrics.serve(mMetricsPort);
+            println(String.format("Serving metrics on http://localhost:%d%s", port, BuildMetrics.PATH));
+        } catch (IOException e) {
+            error(e);
+        }
+    }
+
+    /**
+     * Stops serving the build metrics over HTTP; the MBean keeps the counts of the last build.
+     */
+    private void stopMetrics() {
+        mMetrics.stop();
+    }
+
+    /**
+     * Starts writing console output from its own thread, and streaming events and publishing
+     * metrics if requested, before loading or building.
+     */
+    void begin() {
+        mConsole = new Console(mOut, Console.isTerminal(mOut));
+        startEvents();
+        startMetrics();
+    }
+
+    /**
+     * Writes the profile if requested and stops everything started by begin().
+     */
+    void end() {
+        try {
+            writeProfile();
+        } finally {
+            stopEvents();
+            stopMetrics();
+            Console console = mConsole;
+            if (console != null) {
+                mConsole = null;
+                console.close();
+            }
+        }
+    }
+
+    /**
+     * Starts streaming build events, if requested.
+     */
+    private void startEvents() {
+        if (mEventDestination == null) {
+            return;
+        }
+        try {
+            mEvents = new EventStream(mEventDestination);
+        } catch (IOException e) {
+            error(e);
+        }
+    }
+
+    /**
+     * Finishes streaming build events.
+     */
+    private void stopEvents() {
+        EventStream events = mEvents;
+        if (events != null) {
+            mEvents = null;
+            events.close();
+        }
+    }
+
+    private void emit(String event, Object... fields) {
+        EventStream events = mEvents;
+        if (events != null) {
+            events.emit(event, fields);
+        }
+    }
+
+    /**
+     * Sets the stream that console output is written to.
+     */
+    void setOutput(PrintStream out) {
+        mOut = out;
+    }
+
+    /**
+     * Sets the compiler used to run javac commands in this JVM instead of forking a new process.
+     */
+    void setCompiler(JavaCompiler compiler) {
+        mCompiler = compiler;
     }
 
     /**
@@ -69,6 +338,9 @@ public class Match implements IMatch {
     @Override
     public String getProperty(String key) {
         String property = mProperties.get(key);
+        if (property == null && mConfiguring.get() != null) {
+            property = awaitProperty(key);
+        }
         if (property == null) {
             error(String.format("no targets set property %s", key));
         }
@@ -80,7 +352,32 @@ public class Match implements IMatch {
      */
     @Override
     public void setProperty(String key, String value) {
-        mProperties.put(key, value);
+        ITarget target = mConfiguring.get();
+        if (target == null) {
+            mProperties.put(key, value);
+        } else {
+            synchronized (mPropertyOwners) {
+                ITarget owner = mPropertyOwners.get(key);
+                // Setting the same value twice is harmless, otherwise the value depends on timing
+                if (owner != null && owner != target && !value.equals(mProperties.get(key))) {
+                    error(String.format("%s and %s set property %s to different values", locate(owner), locate(target), key));
+                }
+                if (owner == null) {
+                    mPropertyOwners.put(key, target);
+                }
+                mProperties.put(key, value);
+                List<CompletableFuture<String>> waiting = mPropertyWaits.remove(key);
+                if (waiting != null) {
+                    mWaiting -= waiting.size();
+                    for (CompletableFuture<String> future : waiting) {
+                        future.complete(value);
+                    }
+                }
+            }
+        }
+        if (mRecording != null) {
+            mRecording.setProperty(key, value);
+        }
     }
 
     /**
@@ -88,7 +385,17 @@ public class Match implements IMatch {
      */
     @Override
     public void addFile(String file) {
-        mFiles.put(file, new CountDownLatch(1));
+        ITarget target = mConfiguring.get();
+        if (target != null) {
+            ITarget owner = mFileOwners.putIfAbsent(file, target);
+            if (owner != null && owner != target) {
+                error(String.format("%s and %s both declare file %s", locate(owner), locate(target), file));
+            }
+        }
+        mFiles.add(file);
+        if (mRecording != null) {
+            mRecording.addFile(file, target);
+        }
     }
 
     /**
@@ -96,30 +403,135 @@ public class Match implements IMatch {
      */
     @Override
     public void provideFile(String file) {
-        CountDownLatch latch = mFiles.get(file);
-        if (latch == null) {
+        if (!mFiles.provide(file)) {
             error(String.format("provideFile called before addFile for %s", file));
         }
-        latch.countDown();
+        ITarget target = mBuilding.get();
+        if (target != null) {
+            if (OutputManifest.isOutput(file)) {
+                mOutputs.add(describe(target), file);
+            }
+            mReport.provide(target, file);
+            emit(EventStream.FILE_PROVIDED, "target", describe(target), "file", file);
+        }
+        if (mRecording != null) {
+            mRecording.provideFile(file);
+        }
     }
 
     /**
      * {inheritDoc}
      */
     @Override
-    public void awaitFile(String file) {
-        CountDownLatch latch = mFiles.get(file);
-        if (latch == null) {
+    public void addProcess(Process process) {
+        mProcesses.add(process);
+        if (mCancelled) {
+            kill(process);
+        }
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public void removeProcess(Process process) {
+        mProcesses.remove(process);
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public void addOutput(String file) {
+        ITarget target = mBuilding.get();
+        if (target != null && OutputManifest.isOutput(file)) {
+            mOutputs.add(describe(target), file);
+        }
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public Set<String> getPreviousOutputs() {
+        ITarget target = mBuilding.get();
+        return target == null ? Collections.<String>emptySet() : mOutputs.getPrevious(describe(target));
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public CompletableFuture<Void> getFile(String file) {
+        CompletableFuture<Void> future = mFiles.get(file);
+        if (future == null) {
             error(String.format("no targets provided %s", file));
         }
+        return future;
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public void awaitFile(String file) {
+        awaitFiles(Collections.singletonList(file));
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public void awaitFiles(Collection<String> files) {
+        ITarget target = mBuilding.get();
+        List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>();
+        List<String> waited = new ArrayList<String>();
+        for (String file : files) {
+            CompletableFuture<Void> future = getFile(file);
+            // Most files, like sources, were provided before building started
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                pending.add(future);
+                waited.add(file);
+            }
+        }
+        if (target != null) {
+            mMetrics.awaitFiles(files.size());
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        mMetrics.startWait();
         try {
-            latch.await();
-        } catch(InterruptedException e) {
-            error("target interrupted");
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[pending.size()])).join();
+        } catch (CompletionException e) {
+            throw new StoppedException(e.getCause().getMessage());
+        } finally {
+            mMetrics.finishWait();
+        }
+        profile(Profile.AWAIT, waited.size() == 1 ? waited.get(0) : String.format("%d files", waited.size()), start);
+        if (target != null) {
+            // Only the files actually waited for, so the report doesn't hold every source
+            mReport.addAwait(target, waited, start);
+        }
+    }
+
+    /**
+     * Fails every file the given target declared but hasn't provided, so the targets waiting for
+     * them fail instead of waiting forever.
+     */
+    private void failFiles(ITarget target, Throwable cause) {
+        // Targets that stopped pass on the original failure
+        String message = cause instanceof StoppedException ? cause.getMessage()
+                : String.format("%s failed: %s", describe(target), getMessage(cause));
+        for (Map.Entry<String, ITarget> entry : mFileOwners.entrySet()) {
+            if (entry.getValue() == target) {
+                mFiles.fail(entry.getKey(), new RuntimeException(message, cause));
+            }
         }
     }
 
-    private void scanRoot(File root) {
+    void scanRoot(File root) {
         for (File child : root.listFiles()) {
             String name = child.getName();
             if (!name.matches("\\..*") && !name.equals("out")) {
@@ -143,7 +555,9 @@ public class Match implements IMatch {
     }
 
     private void addScannedFile(File file) {
-        mAllFiles.add(file);
+        String path = file.toString();
+        mScanned.set(mFiles.add(path));
+        mFiles.provide(path);
         if (file.getName().equals(MATCH)) {
             mMatchFiles.add(file);
         }
@@ -151,36 +565,483 @@ public class Match implements IMatch {
 
     void light() {
         long start = System.currentTimeMillis();
+        try {
+            begin();
+            List<ITarget> targets = load();
+            build(targets);
+            done(start);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Scans, parses and configures the workspace.
+     *
+     * @return the configured targets, ready to be built.
+     */
+    List<ITarget> load() {
         println("Scanning");
+        emit(EventStream.PHASE, "phase", Profile.SCAN);
+        long start = System.nanoTime();
         scanRoot(mRoot);
+        profile(Profile.SCAN, Profile.SCAN, start);
+        mMetrics.setPhase(Profile.SCAN, (System.nanoTime() - start) / 1000000);
         println("Parsing");
+        emit(EventStream.PHASE, "phase", Profile.PARSE);
+        start = System.nanoTime();
+        List<ITarget> targets = select(mLazy && !mRequested.isEmpty() ? parseLazily() : parse());
+        profile(Profile.PARSE, Profile.PARSE, start);
+        mMetrics.setPhase(Profile.PARSE, (System.nanoTime() - start) / 1000000);
+        println("Configuring");
+        emit(EventStream.PHASE, "phase", Profile.CONFIGURE);
+        start = System.nanoTime();
+        configure(targets);
+        profile(Profile.CONFIGURE, Profile.CONFIGURE, start);
+        mMetrics.setPhase(Profile.CONFIGURE, (System.nanoTime() - start) / 1000000);
+        return targets;
+    }
+
+    List<ITarget> parse() {
         List<ITarget> targets = new ArrayList<ITarget>();
         for (File match : mMatchFiles) {
-            Lexer lexer = new Lexer(this, LEXEMS, match);
-            Parser parser = new Parser(this, lexer);
-            targets.addAll(parser.parse());
+            targets.addAll(parse(match));
         }
-        println("Configuring");
-        // Create a thread for each target, but only start a thread if the number of targets that
-        // aren't blocked is under MAX_THREADS. If all targets are blocked there is a deadlock.
-        for (File file : mAllFiles) {
-            String full = file.toString();
-            addFile(full);
-            provideFile(full);
+        return targets;
+    }
+
+    private List<ITarget> parse(File match) {
+        Lexer lexer = new Lexer(this, LEXEMS, match);
+        Parser parser = new Parser(this, lexer);
+        return parser.parse();
+    }
+
+    /**
+     * Parses only the match files declaring the requested targets and their dependencies.
+     *
+     * Match files that changed since the last build are parsed to bring the index up to date.
+     */
+    List<ITarget> parseLazily() {
+        TargetIndex index = new TargetIndex(new File(mRoot, TargetIndex.INDEX_FILE));
+        Map<File, List<ITarget>> parsed = new HashMap<File, List<ITarget>>();
+        try {
+            long start = System.nanoTime();
+            index.read();
+            profile(Profile.CACHE, TargetIndex.INDEX_FILE, start);
+            for (File match : mMatchFiles) {
+                if (!index.isCurrent(match)) {
+                    List<ITarget> targets = parse(match);
+                    parsed.put(match, targets);
+                    List<String> names = new ArrayList<String>();
+                    for (ITarget target : targets) {
+                        if (target.getName() != null) {
+                            names.add(target.getName());
+                        }
+                    }
+                    index.put(match, names);
+                }
+            }
+            index.retain(mMatchFiles);
+            index.write();
+        } catch (IOException e) {
+            error(e);
+        }
+        Map<String, File> files = index.getFiles();
+        Set<String> seen = new HashSet<String>();
+        Deque<String> pending = new ArrayDeque<String>(mRequested);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            File match = files.get(name);
+            if (!seen.add(name) || match == null) {
+                // Unknown names are reported by select()
+                continue;
+            }
+            if (!parsed.containsKey(match)) {
+                parsed.put(match, parse(match));
+            }
+            for (ITarget target : parsed.get(match)) {
+                if (name.equals(target.getName())) {
+                    pending.addAll(target.getDependencies());
+                }
+            }
         }
+        List<ITarget> targets = new ArrayList<ITarget>();
+        for (File match : mMatchFiles) {
+            if (parsed.containsKey(match)) {
+                targets.addAll(parsed.get(match));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * @return the requested targets and their transitive dependencies, in declaration order.
+     */
+    List<ITarget> select(List<ITarget> targets) {
+        if (mRequested.isEmpty()) {
+            return targets;
+        }
+        Map<String, ITarget> names = new HashMap<String, ITarget>();
+        for (ITarget target : targets) {
+            String name = target.getName();
+            if (name != null) {
+                names.put(name, target);
+            }
+        }
+        Set<ITarget> closure = new HashSet<ITarget>();
+        Deque<String> pending = new ArrayDeque<String>(mRequested);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            ITarget target = names.get(name);
+            if (target == null) {
+                error(String.format("no targets named %s", name));
+            }
+            if (closure.add(target)) {
+                pending.addAll(target.getDependencies());
+            }
+        }
+        List<ITarget> selected = new ArrayList<ITarget>();
+        for (ITarget target : targets) {
+            if (closure.contains(target)) {
+                selected.add(target);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return the match files declaring the given targets, or every match file if no targets
+     * were requested.
+     */
+    List<File> getMatchFiles(List<ITarget> targets) {
+        if (mRequested.isEmpty()) {
+            return mMatchFiles;
+        }
+        // A requested build only configures the selected targets, so edits to other match files
+        // can't change its configuration. Moving a selected target to another file changes
+        // the files hashed, so that still invalidates the cache.
+        Set<File> declaring = new HashSet<File>();
         for (ITarget target : targets) {
-            target.configure();
+            declaring.add(target.getFile());
+        }
+        List<File> files = new ArrayList<File>();
+        for (File match : mMatchFiles) {
+            if (declaring.contains(match)) {
+                files.add(match);
+            }
+        }
+        return files;
+    }
+
+    void configure(List<ITarget> targets) {
+        ConfigurationCache cache = new ConfigurationCache(new File(mRoot, ConfigurationCache.CACHE_FILE));
+        try {
+            // Only the targets and how they are found change the configuration
+            List<String> options = new ArrayList<String>(mRequested);
+            if (mLazy) {
+                options.add(LAZY);
+            }
+            long start = System.nanoTime();
+            String key = ConfigurationCache.getKey(getMatchFiles(targets), options);
+            boolean cached = !mReconfigure && cache.read(key);
+            profile(Profile.CACHE, ConfigurationCache.CACHE_FILE, start);
+            emit(cached ? EventStream.CACHE_HIT : EventStream.CACHE_MISS, "cache", ConfigurationCache.CACHE_FILE);
+            mMetrics.cache(cached);
+            if (!cached) {
+                mRecording = cache;
+                configureTargets(targets);
+                mRecording = null;
+                cache.write(key, targets);
+            } else {
+                cache.restore(this, targets);
+                mFileOwners.putAll(cache.getOwners(targets));
+            }
+        } catch (IOException e) {
+            error(e);
+        }
+        // Remember which files are available before building so reset() can tell them apart
+        // from the files targets produce.
+        mFiles.snapshot();
+    }
+
+    /**
+     * Configures the targets concurrently, one thread per core.
+     */
+    private void configureTargets(List<ITarget> targets) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        // A target waiting for a property blocks its thread, so the pool may grow by a thread for
+        // every target to keep the target that sets the property from being starved
+        ForkJoinPool executor = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                null, false, 0, threads + targets.size(), 1, null, 60, TimeUnit.SECONDS);
+        synchronized (mPropertyOwners) {
+            mUnconfigured = targets.size();
+            mWaiting = 0;
+        }
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final ITarget target : targets) {
+            // Run as a CompletableFuture, which keeps the target's own exception
+            futures.add(CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    mConfiguring.set(target);
+                    try {
+                        target.configure();
+                    } finally {
+                        mConfiguring.remove();
+                        synchronized (mPropertyOwners) {
+                            mUnconfigured--;
+                            releaseWaits();
+                        }
+                    }
+                }
+            }, executor));
+        }
+        executor.shutdown();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            error(e);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            error("configure interrupted");
+        }
+    }
+
+    /**
+     * Waits, while configuring, for another target to set the given property.
+     *
+     * @return the value, or null if every target still configuring is waiting too, so no target
+     * will set it.
+     */
+    private String awaitProperty(String key) {
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        synchronized (mPropertyOwners) {
+            String property = mProperties.get(key);
+            if (property != null) {
+                return property;
+            }
+            List<CompletableFuture<String>> waiting = mPropertyWaits.get(key);
+            if (waiting == null) {
+                waiting = new ArrayList<CompletableFuture<String>>();
+                mPropertyWaits.put(key, waiting);
+            }
+            waiting.add(future);
+            mWaiting++;
+            releaseWaits();
+        }
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {}
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return future.isDone();
+                }
+            });
+            return future.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error("configure interrupted");
+            return null;
+        }
+    }
+
+    /**
+     * Stops the waits for properties once every target still configuring is waiting, as no
+     * target is left to set them. Called holding mPropertyOwners.
+     */
+    private void releaseWaits() {
+        if (mWaiting > 0 && mWaiting >= mUnconfigured) {
+            for (List<CompletableFuture<String>> waiting : mPropertyWaits.values()) {
+                for (CompletableFuture<String> future : waiting) {
+                    future.complete(null);
+                }
+            }
+            mPropertyWaits.clear();
+            mWaiting = 0;
+        }
+    }
+
+    /**
+     * Records that the given target failed, and cancels the build unless keeping going.
+     *
+     * @return true iff the target failed itself, rather than stopping because of another target.
+     */
+    private boolean fail(ITarget target, Throwable cause) {
+        boolean stopped = cause instanceof StoppedException || mCancelled;
+        failFiles(target, cause);
+        if (stopped) {
+            mStopped.incrementAndGet();
+        } else {
+            mFailures.add(String.format("%s failed: %s", describe(target), getMessage(cause)));
+            if (!mKeepGoing) {
+                cancel();
+            }
+        }
+        return !stopped;
+    }
+
+    /**
+     * Stops the build: commands that are running are killed, no more commands are started and
+     * every file that hasn't been provided fails, so waiting targets stop.
+     */
+    private void cancel() {
+        mCancelled = true;
+        for (Process process : mProcesses) {
+            kill(process);
+        }
+        mFiles.failAll(new StoppedException("build cancelled"));
+    }
+
+    private static void kill(Process process) {
+        // Commands run in bash, so kill whatever bash started too
+        Iterator<ProcessHandle> children = process.descendants().iterator();
+        while (children.hasNext()) {
+            children.next().destroyForcibly();
+        }
+        process.destroyForcibly();
+    }
+
+    private static String getMessage(Throwable cause) {
+        return cause.getMessage() == null ? cause.toString() : cause.getMessage();
+    }
+
+    /**
+     * @return where the given target is declared, as match file and line.
+     */
+    private static String locate(ITarget target) {
+        return String.format("%s:%d", target.getFile().getPath(), target.getLine());
+    }
+
+    private static String describe(ITarget target) {
+        String name = target.getName();
+        return name == null ? target.getFile().getPath() : name;
+    }
+
+    /**
+     * Prepares a configured build to be built again by marking every target output as missing and
+     * forgetting every resolved value.
+     */
+    void reset(List<ITarget> targets) {
+        if (mProfile != null) {
+            mProfile.clear();
         }
+        mFiles.reset();
+        // Properties and files may change between builds, so resolve everything again
+        for (ITarget target : targets) {
+            target.getFunction().reset();
+        }
+    }
+
+    void build(List<ITarget> targets) {
         println("Building");
+        emit(EventStream.PHASE, "phase", "build");
+        mReport = new BuildReport();
+        mReport.start();
+        mMetrics.startBuild(targets.size());
+        Console console = mConsole;
+        if (console != null) {
+            console.setTotal(targets.size());
+        }
+        mCancelled = false;
+        mFailures.clear();
+        mStopped.set(0);
+        mOutputs = new OutputManifest(new File(mRoot, OutputManifest.MANIFEST_FILE));
+        try {
+            mOutputs.read();
+        } catch (IOException e) {
+            error(e);
+        }
         CountDownLatch latch = new CountDownLatch(targets.size());
         for (ITarget target : targets) {
-            new BuildThread(target, latch).start();
+            mReport.start(target, describe(target));
+            new BuildThread(this, target, latch).start();
         }
         try {
             latch.await();
         } catch(InterruptedException e) {
             error("build interrupted");
         }
+        mReport.finish();
+        mMetrics.finishBuild();
+        for (String line : mReport.summarize()) {
+            println(line);
+        }
+        pruneOutputs();
+        if (!mFailures.isEmpty()) {
+            for (String failure : mFailures) {
+                println(String.format("error: %s", failure));
+            }
+            if (mStopped.get() > 0) {
+                println(String.format("%d targets stopped because of the failures", mStopped.get()));
+            }
+            error(String.format("build failed, %d of %d targets failed", mFailures.size(), targets.size()));
+        }
+    }
+
+    /**
+     * Removes the outputs of the previous build that no target produces anymore, and records the
+     * outputs of this build.
+     */
+    private void pruneOutputs() {
+        // Targets that weren't requested weren't built, but still exist
+        boolean complete = mRequested.isEmpty();
+        List<String> stale = mOutputs.getStale(complete);
+        if (!stale.isEmpty()) {
+            final Set<File> directories = ConcurrentHashMap.newKeySet();
+            ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            for (final String output : stale) {
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Outputs are relative to the workspace
+                        if (new File(mRoot, output).delete()) {
+                            directories.add(new File(output).getParentFile());
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                error("pruning interrupted");
+            }
+            // Remove the directories left empty, deepest first
+            List<File> sorted = new ArrayList<File>(directories);
+            Collections.sort(sorted, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return b.getPath().length() - a.getPath().length();
+                }
+            });
+            for (File directory : sorted) {
+                while (directory != null && OutputManifest.isOutput(directory.getPath()) && new File(mRoot, directory.getPath()).delete()) {
+                    directory = directory.getParentFile();
+                }
+            }
+            println(String.format("Removed %d stale outputs", stale.size()));
+        }
+        try {
+            mOutputs.write(complete);
+        } catch (IOException e) {
+            error(e);
+        }
+    }
+
+    void done(long start) {
         long delta = (System.currentTimeMillis() - start) / 1000;
         long hours = delta / 3600;
         long minutes = (delta % 3600) / 60;
@@ -193,15 +1054,44 @@ public class Match implements IMatch {
         } else {
             message = String.format("Done %ds", seconds);
         }
+        emit(EventStream.PHASE, "phase", "done");
         println(message);
-        // Create a thread for each target, but only start a thread if the number of targets that
-        // aren't blocked is under MAX_THREADS. If all targets are blocked there is a deadlock.
-        // Look at the output files of a target and all the files under the output directory,
-        // delete files that were created in the last build but is no longer made by any targets.
-        // This means all targets have to know their output files even if they dont need to build.
-        // This is difficult for java compiles because you cannot know beforehand, given source
-        // files, which classes will get generated because of inner/anonymous classes.
-        // Could maybe be done by a target - it just gets built last.
+    }
+
+    /**
+     * Writes the build profile, if one was requested.
+     */
+    void writeProfile() {
+        if (mProfile == null) {
+            return;
+        }
+        try {
+            mProfile.write(mProfileFile);
+        } catch (IOException e) {
+            error(e);
+        }
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public void profile(String category, String name, long start) {
+        if (mProfile != null) {
+            mProfile.record(category, name, start);
+        }
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public void event(String event, String detail) {
+        ITarget target = mBuilding.get();
+        emit(event, "target", target == null ? null : describe(target), "detail", detail);
+        if (event.equals(EventStream.CACHE_HIT) || event.equals(EventStream.CACHE_MISS)) {
+            mMetrics.cache(event.equals(EventStream.CACHE_HIT));
+        }
     }
 
     /**
@@ -209,32 +1099,121 @@ public class Match implements IMatch {
      */
     @Override
     public void runCommand(String command) {
+        long start = System.nanoTime();
+        ITarget target = mBuilding.get();
+        String name = target == null ? null : describe(target);
+        if (mCancelled) {
+            throw new StoppedException("build cancelled");
+        }
+        emit(EventStream.COMMAND_LAUNCHED, "target", name, "command", command);
+        int result = -1;
+        mMetrics.startCommand();
+        try {
+            if (mCompiler != null && command.startsWith(JAVAC)) {
+                result = compile(command);
+            } else {
+                result = execute(command);
+            }
+        } finally {
+            mMetrics.finishCommand();
+            profile(Profile.COMMAND, command, start);
+            if (target != null) {
+                mReport.addCommand(target, start);
+            }
+            emit(EventStream.COMMAND_EXITED, "target", name, "command", command,
+                    "duration_ms", (System.nanoTime() - start) / 1000000, "exit_code", result);
+        }
+        if (result != 0) {
+            if (mCancelled) {
+                throw new StoppedException("build cancelled");
+            }
+            error("error: " + command);
+        }
+    }
+
+    /**
+     * Runs the command in bash.
+     *
+     * @return the exit code.
+     */
+    private int execute(String command) {
         try {
             Process process = Runtime.getRuntime().exec(new String[] {"/bin/bash", "-c", command});
-            BufferedReader input = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            BufferedReader error = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            int result = process.waitFor();
-            String line = "";
-            boolean loop = true;
-            while (loop) {
-                loop = false;
-                if ((line = input.readLine()) != null) {
-                    println(line);
-                    loop = true;
+            mProcesses.add(process);
+            try {
+                if (mCancelled) {
+                    kill(process);
                 }
-                if ((line = error.readLine()) != null) {
-                    if (result != 0) {
-                        println(String.format("error: %s", line));
+                return drain(process);
+            } finally {
+                mProcesses.remove(process);
+            }
+        } catch (Exception e) {
+            error(e);
+            return -1;
+        }
+    }
+
+    /**
+     * Prints the output of the process, and its errors if it fails.
+     *
+     * @return the exit code.
+     */
+    private int drain(Process process) throws IOException, InterruptedException {
+        // Drain both streams while the process runs, otherwise it blocks once a pipe fills up
+        final BufferedReader error = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+        final List<String> errors = new ArrayList<String>();
+        Thread drain = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while ((line = error.readLine()) != null) {
+                        errors.add(line);
                     }
-                    loop = true;
-                }
+                } catch (IOException e) {}
+            }
+        };
+        drain.start();
+        BufferedReader input = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = input.readLine()) != null) {
+            println(line);
+        }
+        drain.join();
+        int result = process.waitFor();
+        if (result != 0 && !mCancelled) {
+            for (String message : errors) {
+                println(String.format("error: %s", message));
             }
-            if (result != 0) {
-                error("error: " + command);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the javac command with the in-process compiler.
+     *
+     * @return the exit code.
+     */
+    private int compile(String command) {
+        List<String> arguments = new ArrayList<String>();
+        for (String argument : command.substring(JAVAC.length()).split(" ")) {
+            if (!argument.isEmpty()) {
+                arguments.add(argument);
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int result = mCompiler.run(null, output, output, arguments.toArray(new String[arguments.size()]));
+        try {
+            BufferedReader reader = new BufferedReader(new StringReader(output.toString()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                println(result != 0 ? String.format("error: %s", line) : line);
             }
         } catch (Exception e) {
             error(e);
         }
+        return result;
     }
 
     /**
@@ -249,9 +1228,16 @@ public class Match implements IMatch {
      * {inheritDoc}
      */
     @Override
-    public synchronized void println(String message) {
-        if (!mQuiet) {
-            System.out.println(message);
+    public void println(String message) {
+        if (mQuiet) {
+            return;
+        }
+        Console console = mConsole;
+        if (console == null) {
+            mOut.println(message);
+        } else {
+            // Output of a target is held back until it finishes so targets don't interleave
+            console.println(mBuilding.get(), message);
         }
     }
 
@@ -274,24 +1260,63 @@ public class Match implements IMatch {
     public static void main(String args[]) {
         File root = new File(args[0]);
         Match match = new Match(root);
+        match.setOptions(Arrays.asList(args).subList(1, args.length));
         match.light();
     }
 
+    /**
+     * Thrown in a target that stopped because another target failed, rather than failing itself.
+     */
+    private static class StoppedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        StoppedException(String message) {
+            super(message);
+        }
+    }
+
     public static class BuildThread extends Thread {
 
+        private final Match mMatch;
         private final ITarget mTarget;
         private final CountDownLatch mLatch;
 
-        private BuildThread(ITarget target, CountDownLatch latch) {
+        private BuildThread(Match match, ITarget target, CountDownLatch latch) {
+            mMatch = match;
             mTarget = target;
             mLatch = latch;
         }
 
         @Override
         public void run() {
+            long start = System.nanoTime();
+            String name = describe(mTarget);
+            mMatch.mBuilding.set(mTarget);
+            mMatch.mMetrics.startTarget();
+            Console console = mMatch.mConsole;
+            if (console != null) {
+                console.start(mTarget, name);
+            }
+            mMatch.emit(EventStream.TARGET_STARTED, "target", name);
+            boolean built = false;
+            String status = "ok";
             try {
                 mTarget.build();
+                built = true;
+                mMatch.mOutputs.finish(name);
+            } catch (RuntimeException | Error e) {
+                mMatch.mOutputs.fail(name);
+                // Reported when the build finishes
+                status = mMatch.fail(mTarget, e) ? "failed" : "stopped";
             } finally {
+                mMatch.emit(EventStream.TARGET_FINISHED, "target", name,
+                        "duration_ms", (System.nanoTime() - start) / 1000000, "status", status);
+                mMatch.mBuilding.remove();
+                mMatch.mMetrics.finishTarget(built);
+                if (console != null) {
+                    console.finish(mTarget);
+                }
+                mMatch.mReport.finish(mTarget);
+                mMatch.profile(Profile.TARGET, describe(mTarget), start);
                 mLatch.countDown();
             }
         }
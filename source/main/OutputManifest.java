@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the output files each target produced, so outputs that no target produces anymore -
+ * of targets that were removed, or class files of deleted sources - can be removed without
+ * cleaning the whole output directory.
+ *
+ * Each line of the manifest holds a target and one of its output files.
+ */
+public class OutputManifest {
+
+    public static final String MANIFEST_FILE = "out/match/outputs";
+
+    private final File mFile;
+    private final Map<String, Set<String>> mPrevious = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> mCurrent = new ConcurrentHashMap<String, Set<String>>();
+    private final Set<String> mFailed = ConcurrentHashMap.newKeySet();
+
+    public OutputManifest(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return true iff the given file is in the output directory, so can be removed when no
+     * target produces it.
+     */
+    public static boolean isOutput(String file) {
+        return file.startsWith("./out/") || file.startsWith("out/");
+    }
+
+    /**
+     * Loads the manifest written by the previous build, if there is one.
+     */
+    public void read() throws IOException {
+        mPrevious.clear();
+        if (!mFile.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(mFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 2) {
+                    getOutputs(mPrevious, fields[0]).add(fields[1]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the outputs the given target produced in the previous build.
+     */
+    public Set<String> getPrevious(String target) {
+        Set<String> outputs = mPrevious.get(target);
+        return outputs == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(outputs);
+    }
+
+    /**
+     * Records an output produced by the given target in this build.
+     */
+    public void add(String target, String file) {
+        getOutputs(mCurrent, target).add(file);
+    }
+
+    /**
+     * Marks the given target as built, replacing the outputs it produced in the previous build.
+     */
+    public void finish(String target) {
+        getOutputs(mCurrent, target);
+    }
+
+    /**
+     * Marks the given target as failed, so the outputs it produced in the previous build are kept.
+     */
+    public void fail(String target) {
+        mFailed.add(target);
+    }
+
+    /**
+     * @param complete true iff every target was built, so the targets not built were removed.
+     * @return the outputs of the previous build that no target produces anymore.
+     */
+    public List<String> getStale(boolean complete) {
+        Set<String> kept = new HashSet<String>();
+        for (Set<String> outputs : getMerged(complete).values()) {
+            kept.addAll(outputs);
+        }
+        List<String> stale = new ArrayList<String>();
+        for (Set<String> outputs : mPrevious.values()) {
+            for (String output : outputs) {
+                if (!kept.contains(output)) {
+                    stale.add(output);
+                }
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * Writes the outputs of this build, and of the targets it didn't build, for the next build.
+     *
+     * @param complete true iff every target was built, so the targets not built were removed.
+     */
+    public void write(boolean complete) throws IOException {
+        mFile.getParentFile().mkdirs();
+        PrintWriter writer = new PrintWriter(new FileWriter(mFile));
+        try {
+            for (Map.Entry<String, Set<String>> entry : getMerged(complete).entrySet()) {
+                for (String output : entry.getValue()) {
+                    writer.println(String.format("%s\t%s", entry.getKey(), output));
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private Map<String, Set<String>> getMerged(boolean complete) {
+        Map<String, Set<String>> merged = new HashMap<String, Set<String>>();
+        for (Map.Entry<String, Set<String>> entry : mPrevious.entrySet()) {
+            String target = entry.getKey();
+            if (mFailed.contains(target) || (!complete && !mCurrent.containsKey(target))) {
+                getOutputs(merged, target).addAll(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : mCurrent.entrySet()) {
+            getOutputs(merged, entry.getKey()).addAll(entry.getValue());
+        }
+        return merged;
+    }
+
+    private static Set<String> getOutputs(Map<String, Set<String>> outputs, String target) {
+        Set<String> files = outputs.get(target);
+        if (files == null) {
+            files = ConcurrentHashMap.newKeySet();
+            Set<String> existing = outputs.putIfAbsent(target, files);
+            if (existing != null) {
+                files = existing;
+            }
+        }
+        return files;
+    }
+}
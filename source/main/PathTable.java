@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns paths as integer IDs, storing each path as its parent's ID and the ID of its last
+ * segment, so a workspace of many files costs memory in proportion to its distinct directory and
+ * file names rather than a string and several objects per file.
+ *
+ * Not thread safe.
+ */
+public class PathTable {
+
+    public static final String SEPARATOR = "/";
+
+    private final Map<String, Integer> mSegmentIds = new HashMap<String, Integer>();
+    private final List<String> mSegments = new ArrayList<String>();
+    private int[] mParents = new int[64];
+    private int[] mNames = new int[64];
+    private int mSize = 0;
+    // Open addressing table from parent and segment to path ID, -1 marking a free slot
+    private long[] mKeys = new long[128];
+    private int[] mIds = newIds(128);
+
+    /**
+     * @return the ID of the given path, adding it if it is new.
+     */
+    public int intern(String path) {
+        int id = -1;
+        for (String segment : path.split(SEPARATOR, -1)) {
+            Integer name = mSegmentIds.get(segment);
+            if (name == null) {
+                name = mSegments.size();
+                mSegments.add(segment);
+                mSegmentIds.put(segment, name);
+            }
+            int child = lookup(id, name);
+            id = child == -1 ? insert(id, name) : child;
+        }
+        return id;
+    }
+
+    /**
+     * @return the ID of the given path, or -1 if it hasn't been interned.
+     */
+    public int find(String path) {
+        int id = -1;
+        for (String segment : path.split(SEPARATOR, -1)) {
+            Integer name = mSegmentIds.get(segment);
+            if (name == null) {
+                return -1;
+            }
+            id = lookup(id, name);
+            if (id == -1) {
+                return -1;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @return the path with the given ID.
+     */
+    public String getPath(int id) {
+        StringBuilder path = new StringBuilder(mSegments.get(mNames[id]));
+        for (int parent = mParents[id]; parent != -1; parent = mParents[parent]) {
+            path.insert(0, SEPARATOR).insert(0, mSegments.get(mNames[parent]));
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return the number of paths, including the directories of every path interned.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the number of distinct segments.
+     */
+    public int getSegmentCount() {
+        return mSegments.size();
+    }
+
+    private int lookup(int parent, int name) {
+        long key = getKey(parent, name);
+        int mask = mKeys.length - 1;
+        for (int slot = hash(key) & mask; mIds[slot] != -1; slot = (slot + 1) & mask) {
+            if (mKeys[slot] == key) {
+                return mIds[slot];
+            }
+        }
+        return -1;
+    }
+
+    private int insert(int parent, int name) {
+        if (mSize == mParents.length) {
+            mParents = Arrays.copyOf(mParents, mSize * 2);
+            mNames = Arrays.copyOf(mNames, mSize * 2);
+        }
+        int id = mSize++;
+        mParents[id] = parent;
+        mNames[id] = name;
+        // Keep the table at most half full so probes stay short
+        if (mSize * 2 > mKeys.length) {
+            long[] keys = mKeys;
+            int[] ids = mIds;
+            mKeys = new long[keys.length * 2];
+            mIds = newIds(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (ids[i] != -1) {
+                    put(keys[i], ids[i]);
+                }
+            }
+        }
+        put(getKey(parent, name), id);
+        return id;
+    }
+
+    private void put(long key, int id) {
+        int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (mIds[slot] != -1) {
+            slot = (slot + 1) & mask;
+        }
+        mKeys[slot] = key;
+        mIds[slot] = id;
+    }
+
+    private static long getKey(int parent, int name) {
+        return ((long) (parent + 1) << 32) | name;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int[] newIds(int length) {
+        int[] ids = new int[length];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+}
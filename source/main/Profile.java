@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records spans of work during a build and writes them in the Chrome trace event format, which
+ * can be opened in chrome://tracing or Perfetto.
+ *
+ * Recording a span is a clock read and an append to a lock free queue, so it can be left on.
+ */
+public class Profile {
+
+    public static final String SCAN = "scan";
+    public static final String PARSE = "parse";
+    public static final String CONFIGURE = "configure";
+    public static final String TARGET = "target";
+    public static final String COMMAND = "command";
+    public static final String AWAIT = "await";
+    public static final String CACHE = "cache";
+
+    private final Queue<Span> mSpans = new ConcurrentLinkedQueue<Span>();
+    private volatile long mOrigin = System.nanoTime();
+
+    /**
+     * Records a span of work that started at the given System.nanoTime() and ends now.
+     */
+    public void record(String category, String name, long start) {
+        Thread thread = Thread.currentThread();
+        mSpans.add(new Span(category, name, thread.getId(), thread.getName(), start, System.nanoTime()));
+    }
+
+    /**
+     * Forgets every span recorded so far.
+     */
+    public void clear() {
+        mSpans.clear();
+        mOrigin = System.nanoTime();
+    }
+
+    /**
+     * Writes the recorded spans as a Chrome trace.
+     */
+    public void write(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("{\"traceEvents\":[\n");
+            Map<Long, String> threads = new HashMap<Long, String>();
+            boolean first = true;
+            for (Span span : mSpans) {
+                threads.put(span.mThread, span.mThreadName);
+                if (!first) {
+                    writer.write(",\n");
+                }
+                first = false;
+                writer.write(String.format("{\"name\":%s,\"cat\":%s,\"ph\":\"X\",\"ts\":%d,\"dur\":%d,\"pid\":1,\"tid\":%d}",
+                        quote(span.mName), quote(span.mCategory), (span.mStart - mOrigin) / 1000,
+                        (span.mEnd - span.mStart) / 1000, span.mThread));
+            }
+            for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                writer.write(String.format(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":%s}}",
+                        thread.getKey(), quote(thread.getValue())));
+            }
+            writer.write("\n]}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static class Span {
+        private final String mCategory;
+        private final String mName;
+        private final long mThread;
+        private final String mThreadName;
+        private final long mStart;
+        private final long mEnd;
+        Span(String category, String name, long thread, String threadName, long start, long end) {
+            mCategory = category;
+            mName = name;
+            mThread = thread;
+            mThreadName = threadName;
+            mStart = start;
+            mEnd = end;
+        }
+    }
+}
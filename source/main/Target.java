@@ -18,16 +18,23 @@ package main;
 import expression.function.IFunction;
 
 import java.io.File;
+import java.util.List;
 
 public class Target implements ITarget {
 
     private IMatch mMatch;
     private File mFile;
+    private int mLine;
     private IFunction mFunction;
 
     public Target(IMatch match, File file) {
+        this(match, file, 0);
+    }
+
+    public Target(IMatch match, File file, int line) {
         mMatch = match;
         mFile = file;
+        mLine = line;
     }
 
     /**
@@ -38,6 +45,38 @@ public class Target implements ITarget {
         return mFile;
     }
 
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public int getLine() {
+        return mLine;
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public String getName() {
+        return mFunction.getName();
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public List<String> getDependencies() {
+        return mFunction.getDependencies();
+    }
+
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public IFunction getFunction() {
+        return mFunction;
+    }
+
     /**
      * {inheritDoc}
      */
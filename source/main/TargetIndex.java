@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers which match file declares each target name, so a targeted build only has to parse
+ * the match files its targets come from.
+ *
+ * Each line of the index holds a match file, its size and modification time when it was parsed,
+ * and the names of the targets it declares.
+ */
+public class TargetIndex {
+
+    public static final String INDEX_FILE = "out/match/index";
+
+    private final File mFile;
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+
+    public TargetIndex(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Loads the index written by a previous build, if there is one.
+     */
+    public void read() throws IOException {
+        mEntries.clear();
+        if (!mFile.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(mFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4) {
+                    // Corrupt index, everything will be parsed again
+                    mEntries.clear();
+                    return;
+                }
+                List<String> names = new ArrayList<String>();
+                if (!fields[3].isEmpty()) {
+                    names.addAll(Arrays.asList(fields[3].split(",")));
+                }
+                mEntries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), names));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes the index so the next build can reuse it.
+     */
+    public void write() throws IOException {
+        mFile.getParentFile().mkdirs();
+        PrintWriter writer = new PrintWriter(new FileWriter(mFile));
+        try {
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.println(String.format("%s\t%d\t%d\t%s", entry.getKey(), value.mLength,
+                        value.mModified, Utilities.join(",", value.mNames)));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return true iff the match file hasn't changed since it was indexed.
+     */
+    public boolean isCurrent(File match) {
+        Entry entry = mEntries.get(match.getPath());
+        return entry != null && entry.mLength == match.length() && entry.mModified == match.lastModified();
+    }
+
+    /**
+     * Records the names of the targets declared by the match file.
+     */
+    public void put(File match, List<String> names) {
+        mEntries.put(match.getPath(), new Entry(match.length(), match.lastModified(), names));
+    }
+
+    /**
+     * Forgets match files that no longer exist.
+     */
+    public void retain(List<File> matches) {
+        Set<String> paths = new HashSet<String>();
+        for (File match : matches) {
+            paths.add(match.getPath());
+        }
+        mEntries.keySet().retainAll(paths);
+    }
+
+    /**
+     * @return the match file declaring each target, keyed by target name.
+     */
+    public Map<String, File> getFiles() {
+        Map<String, File> files = new HashMap<String, File>();
+        for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+            File match = new File(entry.getKey());
+            for (String name : entry.getValue().mNames) {
+                files.put(name, match);
+            }
+        }
+        return files;
+    }
+
+    private static class Entry {
+        private final long mLength;
+        private final long mModified;
+        private final List<String> mNames;
+        Entry(long length, long modified, List<String> names) {
+            mLength = length;
+            mModified = modified;
+            mNames = names;
+        }
+    }
+}
@@ -15,7 +15,13 @@
  */
 package main;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -42,4 +48,38 @@ public final class Utilities {
         list.add(element);
         return list;
     }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds the contents of the file, or of every file under the directory, to the digest.
+     */
+    public static void digest(MessageDigest digest, File file) throws IOException {
+        digest.update(file.getPath().getBytes("UTF-8"));
+        digest.update((byte) 0);
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            Arrays.sort(children);
+            for (File child : children) {
+                digest(digest, child);
+            }
+        } else if (file.exists()) {
+            digest.update(Files.readAllBytes(file.toPath()));
+        }
+        digest.update((byte) 0);
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
 }
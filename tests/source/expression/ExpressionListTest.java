@@ -17,6 +17,8 @@ package expression;
 
 import main.IMatch;
 import main.ITarget;
+import main.Utilities;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -41,4 +43,27 @@ public class ExpressionListTest {
         Assert.assertEquals("Wrong resolution", EXPECTED, expression.resolve());
     }
 
+    @Test
+    public void memoized() {
+        IMatch match = Mockito.mock(IMatch.class);
+        ITarget target = Mockito.mock(ITarget.class);
+        IExpression element = Mockito.mock(IExpression.class);
+        Mockito.when(element.resolveList()).thenReturn(Utilities.newList(FOO));
+        List<IExpression> elements = new ArrayList<IExpression>();
+        elements.add(element);
+        IExpression expression = new ExpressionList(match, target, elements);
+        List<String> values = expression.resolveList();
+        Assert.assertSame("List not shared", values, expression.resolveList());
+        Assert.assertEquals("Wrong resolution", FOO, expression.resolve());
+        Mockito.verify(element, Mockito.times(1)).resolveList();
+        try {
+            values.add(BAR);
+            Assert.fail("Shared list was modifiable");
+        } catch (UnsupportedOperationException e) {}
+        expression.reset();
+        Mockito.verify(element).reset();
+        Assert.assertNotSame("List not resolved again", values, expression.resolveList());
+        Mockito.verify(element, Mockito.times(2)).resolveList();
+    }
+
 }
@@ -70,7 +70,17 @@ public class FindTest {
         resolve(filesB, Find.DIRECTORY, "", Find.PATTERN, BAR);
     }
 
-    private void resolve(Set<String> expected, String... values) {
+    @Test
+    public void resolveGlobs() {
+        Set<String> expected = new HashSet<String>();
+        expected.add(String.format("%s/c/d/e", mRootPath));
+        Find find = resolve(expected, Function.ANONYMOUS, "", Function.INCLUDE, "c/**", Function.EXCLUDE, "**/f");
+        for (String directory : find.getDirectories()) {
+            Assert.assertFalse(String.format("%s shouldn't be scanned", directory), directory.endsWith("/a"));
+        }
+    }
+
+    private Find resolve(Set<String> expected, String... values) {
         IMatch match = Mockito.mock(IMatch.class);
         ITarget target = Mockito.mock(ITarget.class);
         Mockito.when(target.getFile()).thenReturn(new File(mRoot, "match"));
@@ -78,13 +88,16 @@ public class FindTest {
         for (int i = 0; i < values.length; i++) {
             parameters.put(values[i], new Literal(match, target, values[++i]));
         }
-        IFunction function = new Find(match, target, parameters);
+        Find function = new Find(match, target, parameters);
         function.configure();
         List<String> actual = function.resolveList();
         Assert.assertEquals("Wrong number of files", expected.size(), actual.size());
         for (String file : actual) {
             Assert.assertTrue(String.format("%s not found", file), expected.contains(file));
         }
+        Assert.assertSame("Files not shared", actual, function.resolveList());
+        Mockito.verify(match, Mockito.times(1)).awaitFiles(Mockito.anyCollectionOf(String.class));
+        return function;
     }
 
 }
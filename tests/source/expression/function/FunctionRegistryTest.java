@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import expression.IExpression;
+import main.IMatch;
+import main.ITarget;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FunctionRegistryTest {
+
+    private static final String FAKE = "FunctionFake";
+
+    private IMatch mMatch;
+    private ITarget mTarget;
+    private Map<String, IExpression> mParameters;
+
+    @Before
+    public void setUp() {
+        mMatch = Mockito.mock(IMatch.class);
+        mTarget = Mockito.mock(ITarget.class);
+        mParameters = new HashMap<String, IExpression>();
+    }
+
+    @Test
+    public void builtins() throws Exception {
+        FunctionRegistry registry = new FunctionRegistry(new ArrayList<IFunctionProvider>());
+        Assert.assertTrue("Expected JavaJar", registry.contains("JavaJar"));
+        Assert.assertTrue("Expected SetFile", registry.contains("SetFile"));
+        Assert.assertFalse("Unexpected fake", registry.contains(FAKE));
+    }
+
+    @Test
+    public void provider() throws Exception {
+        List<IFunctionProvider> providers = new ArrayList<IFunctionProvider>();
+        providers.add(new IFunctionProvider() {
+            @Override
+            public List<Class<? extends Function>> getFunctions() {
+                List<Class<? extends Function>> functions = new ArrayList<Class<? extends Function>>();
+                functions.add(FunctionFake.class);
+                return functions;
+            }
+        });
+        FunctionRegistry registry = new FunctionRegistry(providers);
+        Assert.assertTrue("Expected provided function", registry.contains(FAKE));
+        Function function = registry.newFunction(FAKE, mMatch, mTarget, mParameters);
+        Assert.assertTrue("Wrong function", function instanceof FunctionFake);
+    }
+
+    @Test
+    public void packageLookup() throws Exception {
+        FunctionRegistry registry = new FunctionRegistry(new ArrayList<IFunctionProvider>());
+        Function first = registry.newFunction(FAKE, mMatch, mTarget, mParameters);
+        Assert.assertTrue("Expected function to be cached", registry.contains(FAKE));
+        Function second = registry.newFunction(FAKE, mMatch, mTarget, mParameters);
+        Assert.assertNotSame("Expected a new function each call", first, second);
+    }
+
+    @Test
+    public void missing() throws Exception {
+        FunctionRegistry registry = new FunctionRegistry(new ArrayList<IFunctionProvider>());
+        for (String name : new String[] {"Missing", "IFunction"}) {
+            try {
+                registry.newFunction(name, mMatch, mTarget, mParameters);
+                Assert.fail(String.format("Expected %s not to load", name));
+            } catch (ClassNotFoundException e) {}
+            Assert.assertFalse(String.format("Unexpected %s", name), registry.contains(name));
+        }
+    }
+
+}
@@ -15,12 +15,15 @@
  */
 package expression.function;
 
+import expression.ExpressionList;
 import expression.IExpression;
 import expression.Literal;
 import main.IMatch;
 import main.ITarget;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
@@ -53,6 +56,30 @@ public class FunctionTest {
         Assert.assertEquals("Wrong parameter", BAR, function.getParameter(FOO).resolve());
     }
 
+    @Test
+    public void name() {
+        IFunction function = new FunctionFake(mMatch, mTarget, mParameters);
+        Assert.assertNull("Expected no name", function.getName());
+        mParameters.put(Function.NAME, new Literal(mMatch, mTarget, FOO));
+        Assert.assertEquals("Wrong name", FOO, function.getName());
+    }
+
+    @Test
+    public void dependencies() {
+        Map<String, IExpression> get = new HashMap<String, IExpression>();
+        get.put(Function.ANONYMOUS, new Literal(mMatch, mTarget, BAR));
+        List<IExpression> libraries = new ArrayList<IExpression>();
+        libraries.add(new Literal(mMatch, mTarget, FOO));
+        libraries.add(new Get(mMatch, mTarget, get));
+        mParameters.put(Function.NAME, new Literal(mMatch, mTarget, FAKE));
+        mParameters.put(Function.LIBRARY, new ExpressionList(mMatch, mTarget, libraries));
+        IFunction function = new FunctionFake(mMatch, mTarget, mParameters);
+        List<String> dependencies = function.getDependencies();
+        Assert.assertEquals("Wrong number of dependencies", 2, dependencies.size());
+        Assert.assertTrue("Expected library dependency", dependencies.contains(FOO));
+        Assert.assertTrue("Expected Get dependency", dependencies.contains(BAR));
+    }
+
     @Test
     public void getFunction() {
         IFunction function = Function.getFunction(FAKE, mMatch, mTarget, mParameters);
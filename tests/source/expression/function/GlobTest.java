@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GlobTest {
+
+    @Test
+    public void names() {
+        Glob glob = newGlob(Arrays.asList("*.java", "a?c.{txt,md}", "[!x]y"));
+        assertMatches(glob, true, "A.java", "abc.txt", "a.c.md", "zy");
+        assertMatches(glob, false, "a/A.java", "A.javax", "abc.json", "xy", "abbc.txt");
+    }
+
+    @Test
+    public void directories() {
+        Glob glob = newGlob(Arrays.asList("**/*.java", "docs/"));
+        assertMatches(glob, true, "A.java", "a/b/A.java", "docs/a", "docs/a/b");
+        assertMatches(glob, false, "A.txt", "a/docs/b");
+    }
+
+    @Test
+    public void excludes() {
+        Glob glob = new Glob(new ArrayList<String>(), Arrays.asList("**/test/**", "*.tmp"));
+        assertMatches(glob, true, "a", "a/b.tmp", "a/testing/b");
+        assertMatches(glob, false, "b.tmp", "test/a", "a/test/b/c");
+    }
+
+    @Test
+    public void pruning() {
+        Glob glob = new Glob(Arrays.asList("src/**/*.java"), Arrays.asList("**/generated"));
+        Glob.State root = glob.getRoot();
+        Assert.assertNull("Expected res to be pruned", glob.getDirectory(root, "res"));
+        Glob.State source = glob.getDirectory(root, "src");
+        Assert.assertNotNull("Expected src to be walked", source);
+        Assert.assertNotNull("Expected src/main to be walked", glob.getDirectory(source, "main"));
+        Assert.assertNull("Expected src/generated to be pruned", glob.getDirectory(source, "generated"));
+    }
+
+    @Test
+    public void regex() {
+        Assert.assertEquals("Wrong regex", "a\\.b.*", Glob.toRegex("a.b*"));
+        Assert.assertEquals("Wrong regex", "\\{a", Glob.toRegex("{a"));
+    }
+
+    private static Glob newGlob(List<String> includes) {
+        return new Glob(includes, new ArrayList<String>());
+    }
+
+    private static void assertMatches(Glob glob, boolean expected, String... paths) {
+        for (String path : paths) {
+            Assert.assertEquals(String.format("Wrong match for %s", path), expected, glob.matches(path));
+        }
+    }
+}
@@ -20,10 +20,16 @@ import expression.IExpression;
 import expression.Literal;
 import main.IMatch;
 import main.ITarget;
+import main.JUnitRunnerTest;
+import main.UtilitiesTest;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -65,4 +71,86 @@ public class JavaJUnitTest {
         Mockito.verify(match, Mockito.times(1)).runCommand(Mockito.eq(RUN_COMMAND));
     }
 
+    @Test
+    public void partition() {
+        Map<String, Long> durations = new HashMap<String, Long>();
+        durations.put("A", 10L);
+        durations.put("B", 6L);
+        durations.put("C", 4L);
+        List<String> classes = Arrays.asList("A", "B", "C", "D", "E");
+        List<List<String>> shards = JavaJUnit.partition(classes, durations, 2);
+        Assert.assertEquals("Wrong number of shards", 2, shards.size());
+        // D and E are estimated at the average (6), balancing A and E against B, C and D
+        Assert.assertEquals("Wrong shard", new HashSet<String>(Arrays.asList("A", "E")), new HashSet<String>(shards.get(0)));
+        Assert.assertEquals("Wrong shard", new HashSet<String>(Arrays.asList("B", "C", "D")), new HashSet<String>(shards.get(1)));
+        shards = JavaJUnit.partition(classes, durations, 10);
+        Assert.assertEquals("Shards shouldn't be empty", 5, shards.size());
+    }
+
+    @Test
+    public void mergeShards() {
+        String passed = "JUnit version 4.12\n...\nTime: 0.1\n\nOK (3 tests)\n";
+        String failed = "JUnit version 4.12\n..E.\nTime: 0.2\nThere was 1 failure:\n1) test(FooTest)\n\nFAILURES!!!\nTests run: 4,  Failures: 1\n";
+        String merged = JavaJUnit.mergeShards(Arrays.asList(passed, failed));
+        List<String> lines = Arrays.asList(merged.split("\\r?\\n"));
+        Assert.assertEquals("Expected a single failure summary", 1, Collections.frequency(lines, "FAILURES!!!"));
+        Assert.assertEquals("Wrong summary", "Tests run: 7,  Failures: 1", lines.get(lines.size() - 1));
+        Assert.assertTrue("Expected the failure", lines.contains("1) test(FooTest)"));
+        for (String line : lines) {
+            Assert.assertFalse("Unexpected shard summary " + line, line.startsWith("OK ("));
+        }
+        merged = JavaJUnit.mergeShards(Arrays.asList(passed, passed));
+        lines = Arrays.asList(merged.split("\\r?\\n"));
+        Assert.assertEquals("Wrong summary", "OK (6 tests)", lines.get(lines.size() - 1));
+        Assert.assertFalse("Unexpected failures", lines.contains("FAILURES!!!"));
+        merged = JavaJUnit.mergeShards(Arrays.asList(passed, ""));
+        Assert.assertTrue("Expected a shard without results to fail", merged.contains("FAILURES!!!"));
+    }
+
+    @Test
+    public void javaJUnit_inProcess() throws Exception {
+        List<String> classpath = JUnitRunnerTest.getClasspath();
+        IMatch match = Mockito.mock(IMatch.class);
+        Mockito.when(match.getProperty("junit")).thenReturn(classpath.get(0));
+        Mockito.when(match.getProperty("hamcrest")).thenReturn(classpath.get(1));
+        Mockito.when(match.getProperty("mockito")).thenReturn(classpath.get(1));
+        Mockito.when(match.getProperty("FooBar")).thenReturn(classpath.get(3));
+        Mockito.when(match.getProperty("FooBarTest")).thenReturn(classpath.get(2));
+        ITarget target = Mockito.mock(ITarget.class);
+        Map<String, IExpression> parameters = new HashMap<String, IExpression>();
+        parameters.put(Function.NAME, new Literal(match, target, FOOBAR_RESULT));
+        List<IExpression> elements = new ArrayList<>();
+        elements.add(new Literal(match, target, FOOBAR));
+        elements.add(new Literal(match, target, FOOBAR_TEST));
+        parameters.put(Function.LIBRARY, new ExpressionList(match, target, elements));
+        parameters.put(Function.MAIN_CLASS, new Literal(match, target, UtilitiesTest.class.getName()));
+        parameters.put(Function.MODE, new Literal(match, target, JavaJUnit.IN_PROCESS));
+        IFunction function = new JavaJUnit(match, target, parameters);
+        function.configure();
+        File output = new File(OUTPUT);
+        File cache = new File(OUTPUT + ".cache");
+        try {
+            Assert.assertEquals("Wrong resolution", OUTPUT, function.resolve());
+            Mockito.verify(match, Mockito.never()).runCommand(Mockito.anyString());
+            Mockito.verify(match, Mockito.times(1)).provideFile(OUTPUT);
+            String results = new String(Files.readAllBytes(output.toPath()));
+            Assert.assertTrue("Expected test results", results.contains("OK (4 tests)"));
+            Assert.assertTrue("Expected passing result to be cached", cache.exists());
+            Mockito.verify(match, Mockito.times(1)).addOutput(OUTPUT + ".cache");
+            // Nothing changed so the tests aren't run again
+            output.setLastModified(0);
+            Assert.assertEquals("Wrong resolution", OUTPUT, function.resolve());
+            Assert.assertEquals("Tests shouldn't have run", 0, output.lastModified());
+            // The cache is still an output, otherwise it would be pruned
+            Mockito.verify(match, Mockito.times(2)).addOutput(OUTPUT + ".cache");
+            // Unless asked to
+            Mockito.when(match.hasOption(JavaJUnit.RERUN)).thenReturn(true);
+            Assert.assertEquals("Wrong resolution", OUTPUT, function.resolve());
+            Assert.assertTrue("Tests should have run", output.lastModified() > 0);
+        } finally {
+            output.delete();
+            cache.delete();
+        }
+    }
+
 }
@@ -15,22 +15,32 @@
  */
 package expression.function;
 
+import expression.ExpressionList;
 import expression.IExpression;
 import expression.Literal;
 import main.IMatch;
 import main.ITarget;
+import main.MatchTest;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class JavaJarTest {
 
     private static final String CLASSES_OUT = "./out/java/classes/FooBar";
+    private static final String BATCHES_OUT = "./out/java/batches/FooBar";
     private static final String JARS_OUT = "./out/java/jar";
     private static final String JAR_OUT = "./out/java/jar/FooBar.jar";
     private static final String MANIFEST_OUT = "./out/java/classes/FooBar/MANIFEST.MF";
@@ -57,4 +67,65 @@ public class JavaJarTest {
         Mockito.verify(match, Mockito.times(1)).runCommand(Mockito.eq(JAR_COMMAND));
     }
 
+    @Test
+    public void shards() throws IOException {
+        final String FOOBAR = "FooBar";
+        File root = new File("temp" + Long.toString(System.currentTimeMillis()));
+        root.mkdirs();
+        try {
+            String a = write(root, "A.java", "class A {}");
+            String b = write(root, "B.java", "class B { A a; }");
+            String c = write(root, "C.java", "class C {}");
+            IMatch match = Mockito.mock(IMatch.class);
+            // Stand in for javac by writing a class file to the output directory
+            Mockito.doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws IOException {
+                    String command = (String) invocation.getArguments()[0];
+                    if (command.startsWith("javac ")) {
+                        File output = new File(command.substring(command.lastIndexOf(' ') + 1), "foo");
+                        output.mkdirs();
+                        new File(output, output.getParentFile().getName() + ".class").createNewFile();
+                    }
+                    return null;
+                }
+            }).when(match).runCommand(Mockito.anyString());
+            ITarget target = Mockito.mock(ITarget.class);
+            Map<String, IExpression> parameters = new HashMap<String, IExpression>();
+            List<IExpression> sources = new ArrayList<IExpression>();
+            for (String source : Arrays.asList(a, b, c)) {
+                sources.add(new Literal(match, target, source));
+            }
+            parameters.put(Function.NAME, new Literal(match, target, FOOBAR));
+            parameters.put(Function.SOURCE, new ExpressionList(match, target, sources));
+            parameters.put(Function.MAIN_CLASS, new Literal(match, target, FOOBAR));
+            parameters.put(Function.SHARDS, new Literal(match, target, "2"));
+            IFunction function = new JavaJar(match, target, parameters);
+            function.configure();
+            Assert.assertEquals("Wrong resolution", JAR_OUT, function.resolve());
+            String classpath = String.format("-cp %s", CLASSES_OUT);
+            Mockito.verify(match, Mockito.times(1)).runCommand(Mockito.eq(String.format("javac %s %s %s -d %s/0", classpath, a, b, BATCHES_OUT)));
+            Mockito.verify(match, Mockito.times(1)).runCommand(Mockito.eq(String.format("javac %s %s -d %s/1", classpath, c, BATCHES_OUT)));
+            Mockito.verify(match, Mockito.times(1)).runCommand(Mockito.eq(JAR_COMMAND));
+            // Each batch wrote to its own directory, and both were moved into the jar's classes
+            Assert.assertTrue("Expected first batch", new File(CLASSES_OUT, "foo/0.class").exists());
+            Assert.assertTrue("Expected second batch", new File(CLASSES_OUT, "foo/1.class").exists());
+            Assert.assertFalse("Batches should be removed", new File(BATCHES_OUT).exists());
+        } finally {
+            MatchTest.deleteFileStructure(root);
+            File classes = new File(CLASSES_OUT, "foo");
+            if (classes.exists()) {
+                MatchTest.deleteFileStructure(classes);
+            }
+        }
+    }
+
+    private static String write(File root, String name, String content) throws IOException {
+        File file = new File(root, name);
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+        return file.getPath();
+    }
+
 }
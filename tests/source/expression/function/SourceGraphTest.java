@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package expression.function;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SourceGraphTest {
+
+    private static final String A = "a/A.java";
+    private static final String B = "b/B.java";
+    private static final String C = "c/C.java";
+    private static final String D = "c/D.java";
+    private static final String E = "e/E.java";
+
+    @Test
+    public void dependencies() {
+        SourceGraph graph = new SourceGraph();
+        graph.add(A, "package a;\n// uses b.B\npublic class A { String s = \"c.C\"; }");
+        graph.add(B, "package b;\nimport a.A;\nimport static c.C.run;\nclass B extends A {}");
+        graph.add(C, "package c;\npublic class C { D d; }");
+        graph.add(D, "package c;\nclass D { e.E.Inner e; }");
+        graph.add(E, "package e;\nimport c.*;\npublic class E { class Inner {} C c; }");
+        Assert.assertEquals("Wrong dependencies of A", Arrays.<String>asList(), graph.getDependencies(A));
+        assertDependencies(graph.getDependencies(B), A, C);
+        assertDependencies(graph.getDependencies(C), D);
+        assertDependencies(graph.getDependencies(D), E);
+        assertDependencies(graph.getDependencies(E), C);
+    }
+
+    @Test
+    public void waves() {
+        SourceGraph graph = new SourceGraph();
+        graph.add(A, "package a;\npublic class A {}");
+        graph.add(B, "package b;\npublic class B { a.A a; }");
+        graph.add(C, "package c;\npublic class C { D d; }");
+        graph.add(D, "package c;\nclass D { C c; }");
+        graph.add(E, "package e;\npublic class E { c.C c; b.B b; }");
+        List<List<List<String>>> waves = graph.getWaves(2, 1);
+        Assert.assertEquals("Wrong number of waves", 2, waves.size());
+        Assert.assertEquals("Wrong first wave", Arrays.asList(Arrays.asList(C, D), Arrays.asList(A)), waves.get(0));
+        Assert.assertEquals("Wrong second wave", Arrays.asList(Arrays.asList(B, E)), waves.get(1));
+        waves = graph.getWaves(2, 100);
+        Assert.assertEquals("Expected a single wave", 1, waves.size());
+        Assert.assertEquals("Wrong batches", Arrays.asList(Arrays.asList(A, B, C, D, E)), waves.get(0));
+    }
+
+    @Test
+    public void components() {
+        int[][] edges = {{1}, {2}, {0}, {0}, {}};
+        int[] components = SourceGraph.getComponents(edges);
+        Assert.assertEquals("Expected a cycle", components[0], components[1]);
+        Assert.assertEquals("Expected a cycle", components[0], components[2]);
+        Assert.assertTrue("Expected dependencies first", components[3] > components[0]);
+        Assert.assertNotEquals("Unexpected cycle", components[3], components[4]);
+    }
+
+    @Test
+    public void strip() {
+        String code = SourceGraph.strip("a /* b */ c // d\n\"e\\\"\" 'f' \"\"\"\ng\"\"\" h");
+        Assert.assertEquals("Wrong code", "a   c  \n      h", code);
+    }
+
+    private static void assertDependencies(List<String> actual, String... expected) {
+        Assert.assertEquals("Wrong dependencies", Arrays.asList(expected).size(), actual.size());
+        for (String dependency : expected) {
+            Assert.assertTrue(String.format("Expected %s", dependency), actual.contains(dependency));
+        }
+    }
+}
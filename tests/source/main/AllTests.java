@@ -21,18 +21,35 @@ import org.junit.runner.RunWith;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     expression.function.FindTest.class,
+    expression.function.FunctionRegistryTest.class,
     expression.function.FunctionTest.class,
     expression.function.GetFileTest.class,
     expression.function.GetTest.class,
+    expression.function.GlobTest.class,
     expression.function.JavaJarTest.class,
     expression.function.JavaJUnitTest.class,
     expression.function.SetFileTest.class,
     expression.function.SetTest.class,
+    expression.function.SourceGraphTest.class,
     expression.ExpressionListTest.class,
     expression.LiteralTest.class,
     frontend.LexerTest.class,
     frontend.ParserTest.class,
+    main.BuildMetricsTest.class,
+    main.BuildReportTest.class,
+    main.ClassGraphTest.class,
+    main.ConfigurationCacheTest.class,
+    main.ConsoleTest.class,
+    main.DaemonTest.class,
+    main.EventStreamTest.class,
+    main.FileRegistryTest.class,
+    main.JUnitPoolTest.class,
+    main.JUnitRunnerTest.class,
     main.MatchTest.class,
+    main.OutputManifestTest.class,
+    main.PathTableTest.class,
+    main.ProfileTest.class,
+    main.TargetIndexTest.class,
     main.TargetTest.class,
     main.UtilitiesTest.class
 })
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BuildMetricsTest {
+
+    @Test
+    public void counts() {
+        BuildMetrics metrics = new BuildMetrics();
+        metrics.startBuild(3);
+        metrics.startTarget();
+        metrics.startTarget();
+        metrics.startWait();
+        metrics.startCommand();
+        Assert.assertEquals("Wrong pending", 1, metrics.getTargetsPending());
+        Assert.assertEquals("Wrong running", 2, metrics.getTargetsRunning());
+        Assert.assertEquals("Wrong blocked", 1, metrics.getTargetsBlocked());
+        Assert.assertEquals("Wrong commands", 1, metrics.getActiveCommands());
+        metrics.finishWait();
+        metrics.finishCommand();
+        metrics.finishTarget(true);
+        metrics.finishTarget(false);
+        metrics.cache(true);
+        metrics.cache(true);
+        metrics.cache(true);
+        metrics.cache(false);
+        Assert.assertEquals("Wrong running", 0, metrics.getTargetsRunning());
+        Assert.assertEquals("Wrong blocked", 0, metrics.getTargetsBlocked());
+        Assert.assertEquals("Wrong done", 1, metrics.getTargetsDone());
+        Assert.assertEquals("Wrong failed", 1, metrics.getTargetsFailed());
+        Assert.assertEquals("Wrong ratio", 0.75, metrics.getCacheHitRatio(), 0.001);
+        metrics.reset();
+        Assert.assertEquals("Expected counts to be reset", 0, metrics.getTargetsDone());
+        Assert.assertEquals("Expected no ratio without lookups", 0, metrics.getCacheHitRatio(), 0.001);
+    }
+
+    @Test
+    public void prometheus() {
+        BuildMetrics metrics = new BuildMetrics();
+        metrics.startBuild(2);
+        metrics.setPhase(Profile.SCAN, 1500);
+        metrics.awaitFiles(3);
+        String text = metrics.toPrometheus();
+        Assert.assertTrue("Wrong pending", text.contains("match_targets{state=\"pending\"} 2\n"));
+        Assert.assertTrue("Wrong awaited", text.contains("match_files_awaited_total 3\n"));
+        Assert.assertTrue("Wrong phase", text.contains("match_phase_seconds{phase=\"scan\"} 1.500\n"));
+    }
+
+    @Test
+    public void prometheus_locale() {
+        Locale locale = Locale.getDefault();
+        // German formats decimals with a comma, which isn't valid exposition text
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            BuildMetrics metrics = new BuildMetrics();
+            metrics.setPhase(Profile.SCAN, 1234);
+            String text = metrics.toPrometheus();
+            Assert.assertTrue("Wrong phase", text.contains("match_phase_seconds{phase=\"scan\"} 1.234\n"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void serve() throws Exception {
+        BuildMetrics metrics = new BuildMetrics();
+        metrics.cache(false);
+        int port = metrics.serve(0);
+        try {
+            URL url = new URL(String.format("http://localhost:%d%s", port, BuildMetrics.PATH));
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            Assert.assertEquals("Wrong status", 200, connection.getResponseCode());
+            InputStream input = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            input.close();
+            Assert.assertEquals("Wrong body", metrics.toPrometheus(), body.toString("UTF-8"));
+        } finally {
+            metrics.stop();
+        }
+    }
+
+    @Test
+    public void register() throws Exception {
+        BuildMetrics metrics = new BuildMetrics();
+        metrics.startBuild(4);
+        metrics.register();
+        // Registering again replaces the previous build's metrics
+        BuildMetrics next = new BuildMetrics();
+        next.startBuild(5);
+        next.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(BuildMetrics.OBJECT_NAME);
+        Assert.assertEquals("Wrong attribute", 5L, server.getAttribute(name, "TargetsPending"));
+        server.unregisterMBean(name);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class BuildReportTest {
+
+    @Test
+    public void summarize() throws Exception {
+        ITarget a = Mockito.mock(ITarget.class);
+        ITarget b = Mockito.mock(ITarget.class);
+        ITarget c = Mockito.mock(ITarget.class);
+        BuildReport report = new BuildReport();
+        report.start();
+        report.start(a, "A");
+        report.start(b, "B");
+        report.start(c, "C");
+        report.finish(c);
+        long wait = System.nanoTime();
+        Thread.sleep(20);
+        report.provide(a, "a");
+        report.finish(a);
+        report.addAwait(b, "a", wait);
+        long command = System.nanoTime();
+        Thread.sleep(20);
+        report.addCommand(b, command);
+        report.finish(b);
+        report.finish();
+        List<String> lines = report.summarize();
+        Assert.assertEquals("Wrong number of lines", 6, lines.size());
+        Assert.assertEquals("Wrong heading", "Slowest targets:", lines.get(0));
+        Assert.assertTrue("Expected B to be slowest", lines.get(1).matches("  \\d+\\.\\ds B \\(waiting 0\\.\\ds, commands 0\\.\\ds\\)"));
+        Assert.assertTrue("Wrong critical path", lines.get(4).matches("Critical path \\d+\\.\\ds: A \\d+\\.\\ds -> B \\d+\\.\\ds"));
+        Assert.assertTrue("Wrong parallelism", lines.get(5).matches("Parallelism \\d+\\.\\d over \\d+\\.\\ds"));
+    }
+
+    @Test
+    public void summarize_empty() {
+        BuildReport report = new BuildReport();
+        report.start();
+        report.finish();
+        Assert.assertTrue("Expected no summary", report.summarize().isEmpty());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassGraphTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dependsOn() throws Exception {
+        ClassGraph graph = getGraph();
+        Set<String> lexer = Collections.singleton("frontend.Lexer");
+        Assert.assertTrue("Expected Match to depend on Lexer through Parser", graph.dependsOn("main.Match", lexer));
+        Assert.assertTrue("Expected Lexer to depend on itself", graph.dependsOn("frontend.Lexer", lexer));
+        Assert.assertFalse("Expected Utilities not to depend on Match", graph.dependsOn("main.Utilities", Collections.singleton("main.Match")));
+    }
+
+    @Test
+    public void getChanged() throws Exception {
+        ClassGraph graph = getGraph();
+        Map<String, String> previous = new HashMap<String, String>(graph.getHashes());
+        Assert.assertTrue("Expected no changes", graph.getChanged(previous).isEmpty());
+        previous.put("main.Utilities", "0");
+        previous.remove("main.Match");
+        previous.put("main.Removed", "0");
+        Assert.assertEquals("Wrong changes", new HashSet<String>(Arrays.asList("main.Utilities", "main.Match", "main.Removed")), graph.getChanged(previous));
+    }
+
+    @Test
+    public void readWriteHashes() throws Exception {
+        File file = new File(folder.getRoot(), "hashes");
+        Assert.assertTrue("Expected no hashes", ClassGraph.readHashes(file).isEmpty());
+        ClassGraph graph = getGraph();
+        ClassGraph.writeHashes(file, graph.getHashes());
+        Assert.assertEquals("Wrong hashes", graph.getHashes(), ClassGraph.readHashes(file));
+    }
+
+    private static ClassGraph getGraph() throws Exception {
+        ClassGraph graph = new ClassGraph();
+        graph.add(new File(Utilities.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+        return graph;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import expression.function.Find;
+import expression.function.Function;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConfigurationCacheTest {
+
+    private static final String MATCH = "Set(name = \"foo\" value = \"bar\")\n"
+            + "JavaJar(name = \"FooBar\" source = Find(\"c\") main_class = \"FooBar\")\n";
+
+    private File mRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = MatchTest.createFileStructure();
+        FileWriter writer = new FileWriter(new File(mRoot, Match.MATCH));
+        writer.write(MATCH);
+        writer.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        MatchTest.deleteFileStructure(mRoot);
+    }
+
+    @Test
+    public void cache() throws Exception {
+        Match match = createMatch();
+        Find find = getFind(match.load());
+        Assert.assertEquals("Wrong number of files", 2, find.getFiles().size());
+        Assert.assertFalse("Find should have scanned", find.getDirectories().isEmpty());
+        Assert.assertTrue("Expected cache", new File(mRoot, ConfigurationCache.CACHE_FILE).exists());
+
+        // Nothing changed, the configuration is replayed
+        match = createMatch();
+        find = getFind(match.load());
+        Assert.assertEquals("Wrong number of files", 2, find.getFiles().size());
+        Assert.assertTrue("Find shouldn't have scanned", find.getDirectories().isEmpty());
+        Assert.assertEquals("Wrong property", "bar", match.getProperty("foo"));
+        Assert.assertEquals("Wrong property", "./out/java/jar/FooBar.jar", match.getProperty("FooBar"));
+
+        // A new file invalidates the cache
+        new File(mRoot, "c/d/g").createNewFile();
+        match = createMatch();
+        find = getFind(match.load());
+        Assert.assertEquals("Wrong number of files", 3, find.getFiles().size());
+        Assert.assertFalse("Find should have scanned", find.getDirectories().isEmpty());
+
+        // Forced reconfiguration
+        match = createMatch();
+        match.setReconfigure(true);
+        find = getFind(match.load());
+        Assert.assertFalse("Find should have scanned", find.getDirectories().isEmpty());
+    }
+
+    @Test
+    public void cache_requested() throws Exception {
+        File unrelated = new File(mRoot, "a/" + Match.MATCH);
+        writeFile(unrelated, "Set(name = \"baz\" value = \"qux\")\n");
+        Match match = createMatch();
+        match.setTargets(Arrays.asList("foo", "FooBar"));
+        Assert.assertFalse("Find should have scanned", getFind(match.load()).getDirectories().isEmpty());
+
+        // Match files declaring no requested targets don't invalidate the cache
+        writeFile(unrelated, "Set(name = \"baz\" value = \"quux\")\n");
+        match = createMatch();
+        match.setTargets(Arrays.asList("foo", "FooBar"));
+        Assert.assertTrue("Find shouldn't have scanned", getFind(match.load()).getDirectories().isEmpty());
+
+        // But the match file declaring them does
+        writeFile(new File(mRoot, Match.MATCH), MATCH + "\n");
+        match = createMatch();
+        match.setTargets(Arrays.asList("foo", "FooBar"));
+        Assert.assertFalse("Find should have scanned", getFind(match.load()).getDirectories().isEmpty());
+    }
+
+    @Test
+    public void owners() throws Exception {
+        createMatch().load();
+        Match match = createMatch();
+        List<ITarget> targets = match.load();
+        ConfigurationCache cache = new ConfigurationCache(new File(mRoot, ConfigurationCache.CACHE_FILE));
+        Assert.assertTrue("Expected cache", cache.read(ConfigurationCache.getKey(match.getMatchFiles(), new ArrayList<String>())));
+        Map<String, ITarget> owners = cache.getOwners(targets);
+        Assert.assertEquals("Wrong owner", targets.get(1), owners.get("./out/java/jar/FooBar.jar"));
+        Assert.assertFalse("Scanned files have no owner", owners.containsKey(new File(mRoot, "bar").getPath()));
+    }
+
+    private Match createMatch() {
+        Match match = new Match(mRoot);
+        match.mQuiet = true;
+        return match;
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+    }
+
+    private static Find getFind(List<ITarget> targets) {
+        Assert.assertEquals("Wrong number of targets", 2, targets.size());
+        return (Find) targets.get(1).getFunction().getParameter(Function.SOURCE);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConsoleTest {
+
+    @Test
+    public void group() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Console console = new Console(new PrintStream(output, true), false);
+        Object a = new Object();
+        Object b = new Object();
+        console.start(a, "A");
+        console.start(b, "B");
+        console.println(a, "a1");
+        console.println(b, "b1");
+        console.println(null, "building");
+        console.println(a, "a2");
+        console.flush();
+        Assert.assertEquals("Expected target output to be held back", "building\n", output.toString());
+        console.finish(b);
+        console.println(a, "a3");
+        console.finish(a);
+        console.flush();
+        Assert.assertEquals("Wrong output", "building\nb1\na1\na2\na3\n", output.toString());
+        console.start(b, "B");
+        console.println(b, "b2");
+        console.close();
+        Assert.assertEquals("Expected unfinished output on close", "building\nb1\na1\na2\na3\nb2\n", output.toString());
+    }
+
+    @Test
+    public void progress() {
+        Assert.assertEquals("Wrong progress", "[1/4] A, B", Console.getProgress(1, 4, Arrays.asList("A", "B")));
+        String name = String.join("", Collections.nCopies(60, "x"));
+        String line = Console.getProgress(0, 3, Arrays.asList(name, name, "C"));
+        Assert.assertEquals("Wrong progress", "[0/3] " + name + ", C +1", line);
+        Assert.assertTrue("Progress too long", Console.getProgress(0, 1, Arrays.asList(name + name)).length() <= Console.WIDTH);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DaemonTest {
+
+    private File mRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = MatchTest.createFileStructure();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        MatchTest.deleteFileStructure(mRoot);
+    }
+
+    @Test
+    public void serve() throws Exception {
+        final Daemon daemon = new Daemon(mRoot, Daemon.DEFAULT_IDLE);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {}
+            }
+        };
+        thread.start();
+        File portFile = new File(mRoot, Daemon.PORT_FILE);
+        int port = awaitPort(portFile);
+        File tokenFile = new File(mRoot, Daemon.TOKEN_FILE);
+        Assert.assertEquals("Token should only be accessible to its owner", "rw-------",
+                PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+        String token = new String(Files.readAllBytes(tokenFile.toPath()), "UTF-8");
+        // Build twice, the second build reuses the configured graph
+        for (int i = 0; i < 2; i++) {
+            List<String> output = request(port, token, Daemon.BUILD);
+            Assert.assertTrue("Expected build output", output.contains("Building"));
+            Assert.assertEquals("Wrong status", Daemon.STATUS + 0, output.get(output.size() - 1));
+        }
+        List<String> output = request(port, token, "foo");
+        Assert.assertEquals("Wrong status", Daemon.STATUS + 1, output.get(output.size() - 1));
+        // Requests without the token are rejected
+        output = request(port, "foo", Daemon.STOP);
+        Assert.assertEquals("Wrong status", Daemon.STATUS + 1, output.get(output.size() - 1));
+        Assert.assertTrue("Daemon shouldn't have stopped", thread.isAlive());
+        request(port, token, Daemon.STOP);
+        thread.join();
+        Assert.assertFalse("Port file should be deleted", portFile.exists());
+        Assert.assertFalse("Token file should be deleted", tokenFile.exists());
+    }
+
+    private static int awaitPort(File portFile) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (portFile.exists()) {
+                BufferedReader reader = new BufferedReader(new FileReader(portFile));
+                String line = reader.readLine();
+                reader.close();
+                if (line != null && !line.isEmpty()) {
+                    return Integer.parseInt(line);
+                }
+            }
+            Thread.sleep(100);
+        }
+        Assert.fail("Daemon didn't start");
+        return -1;
+    }
+
+    private static List<String> request(int port, String token, String command) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        PrintStream out = new PrintStream(socket.getOutputStream(), true);
+        out.println(token);
+        out.println(command);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        socket.close();
+        return lines;
+    }
+}
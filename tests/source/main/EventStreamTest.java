@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EventStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void file() throws Exception {
+        File file = new File(folder.getRoot(), "out/events.jsonl");
+        EventStream events = new EventStream(file.getPath());
+        events.emit(EventStream.TARGET_STARTED, "target", "Foo");
+        events.emit(EventStream.COMMAND_EXITED, "command", "echo \"foo\"", "exit_code", 0);
+        events.close();
+        List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+        Assert.assertEquals("Wrong number of events", 2, lines.size());
+        Assert.assertTrue("Wrong event", lines.get(0).matches("\\{\"time\":\\d+,\"event\":\"target_started\",\"target\":\"Foo\"\\}"));
+        Assert.assertTrue("Wrong event", lines.get(1).endsWith("\"event\":\"command_exited\",\"command\":\"echo \\\"foo\\\"\",\"exit_code\":0}"));
+        // Later builds append
+        events = new EventStream(file.getPath());
+        events.emit(EventStream.PHASE, "phase", "scan");
+        events.close();
+        Assert.assertEquals("Expected events to be appended", 3, Files.readAllLines(file.toPath(), Charset.forName("UTF-8")).size());
+    }
+
+    @Test
+    public void socket() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try {
+            EventStream events = new EventStream(EventStream.TCP + server.getLocalPort());
+            Socket socket = server.accept();
+            events.emit(EventStream.CACHE_HIT, "target", null);
+            events.close();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            Assert.assertTrue("Wrong event", reader.readLine().endsWith("\"event\":\"cache_hit\",\"target\":null}"));
+            Assert.assertNull("Expected stream to be closed", reader.readLine());
+            socket.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void socket_closed() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try {
+            EventStream events = new EventStream(EventStream.TCP + server.getLocalPort());
+            server.accept().close();
+            // Writing eventually fails once the consumer has gone away
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!events.hasFailed() && System.currentTimeMillis() < deadline) {
+                events.emit(EventStream.PHASE, "phase", "build");
+                Thread.sleep(1);
+            }
+            Assert.assertTrue("Expected writing to fail", events.hasFailed());
+            // An event emitted as writing failed may linger, but no more are queued
+            int queued = events.getQueued();
+            for (int i = 0; i < 1000; i++) {
+                events.emit(EventStream.PHASE, "phase", "build");
+            }
+            Assert.assertEquals("Expected events to be dropped", queued, events.getQueued());
+            events.close();
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileRegistryTest {
+
+    private static final String FOO = "./out/foo";
+    private static final String BAR = "./out/bar";
+
+    @Test
+    public void provide() {
+        FileRegistry registry = new FileRegistry();
+        Assert.assertNull("File wasn't declared", registry.get(FOO));
+        Assert.assertFalse("File wasn't declared", registry.provide(FOO));
+        registry.add(FOO);
+        CompletableFuture<Void> future = registry.get(FOO);
+        Assert.assertFalse("File wasn't provided", future.isDone());
+        Assert.assertSame("Waiters should share a future", future, registry.get(FOO));
+        Assert.assertTrue("File was declared", registry.provide(FOO));
+        Assert.assertTrue("File was provided", future.isDone());
+        Assert.assertTrue("File was provided", registry.get(FOO).isDone());
+        Assert.assertNull("Directories aren't files", registry.get("./out"));
+    }
+
+    @Test
+    public void fail() {
+        FileRegistry registry = new FileRegistry();
+        registry.add(FOO);
+        registry.add(BAR);
+        registry.provide(BAR);
+        CompletableFuture<Void> future = registry.get(FOO);
+        registry.fail(FOO, new RuntimeException("broken"));
+        registry.fail(BAR, new RuntimeException("broken"));
+        Assert.assertTrue("Expected failure", future.isCompletedExceptionally());
+        Assert.assertTrue("Expected failure for later waiters", registry.get(FOO).isCompletedExceptionally());
+        Assert.assertFalse("Provided files can't fail", registry.get(BAR).isCompletedExceptionally());
+    }
+
+    @Test
+    public void reset() {
+        FileRegistry registry = new FileRegistry();
+        registry.add(FOO);
+        registry.provide(FOO);
+        registry.add(BAR);
+        registry.snapshot();
+        registry.provide(BAR);
+        registry.failAll(new RuntimeException("cancelled"));
+        registry.reset();
+        Assert.assertTrue("Files available before building stay provided", registry.get(FOO).isDone());
+        CompletableFuture<Void> future = registry.get(BAR);
+        Assert.assertFalse("Outputs should be missing again", future.isDone());
+        registry.failAll(new RuntimeException("cancelled"));
+        Assert.assertTrue("Expected failure", future.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class JUnitPoolTest {
+
+    private final IMatch mMatch = Mockito.mock(IMatch.class);
+
+    @After
+    public void tearDown() {
+        JUnitPool.shutdown();
+    }
+
+    @Test
+    public void run() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean passed = JUnitPool.run(JUnitRunnerTest.getClasspath(), Utilities.newList(UtilitiesTest.class.getName()), new PrintStream(output, true), 2, mMatch);
+        Assert.assertTrue("Expected tests to pass", passed);
+        Assert.assertTrue("Expected test results", output.toString().contains("OK (4 tests)"));
+        Assert.assertEquals("Expected worker to be reused", 1, JUnitPool.getIdleCount());
+        JUnitPool.run(JUnitRunnerTest.getClasspath(), Utilities.newList(UtilitiesTest.class.getName()), new PrintStream(output, true), 2, mMatch);
+        Assert.assertEquals("Expected worker to be recycled", 0, JUnitPool.getIdleCount());
+    }
+
+    @Test
+    public void run_missingClass() throws Exception {
+        try {
+            JUnitPool.run(JUnitRunnerTest.getClasspath(), Utilities.newList("main.MissingTest"), new PrintStream(new ByteArrayOutputStream()), 2, mMatch);
+            Assert.fail("Expected missing class to fail");
+        } catch (Exception e) {
+            Assert.assertTrue("Expected missing class", e.getMessage().contains("main.MissingTest"));
+        }
+        Assert.assertEquals("Expected worker to survive a failed request", 1, JUnitPool.getIdleCount());
+    }
+
+    @Test
+    public void run_cancelled() throws Exception {
+        // Cancelling the build kills the processes it tracks
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                Process process = (Process) invocation.getArguments()[0];
+                process.destroyForcibly().waitFor();
+                return null;
+            }
+        }).when(mMatch).addProcess(Mockito.any(Process.class));
+        try {
+            JUnitPool.run(JUnitRunnerTest.getClasspath(), Utilities.newList(UtilitiesTest.class.getName()), new PrintStream(new ByteArrayOutputStream()), 2, mMatch);
+            Assert.fail("Expected a killed worker to fail the run");
+        } catch (IOException e) {}
+        Mockito.verify(mMatch).removeProcess(Mockito.any(Process.class));
+        Assert.assertEquals("Expected killed worker to be dropped", 0, JUnitPool.getIdleCount());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JUnitRunnerTest {
+
+    @Test
+    public void run() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean passed = JUnitRunner.run(getClasspath(), Utilities.newList(UtilitiesTest.class.getName()), new PrintStream(output, true));
+        Assert.assertTrue("Expected tests to pass", passed);
+        String results = output.toString();
+        Assert.assertTrue("Expected JUnit version", results.startsWith("JUnit version "));
+        Assert.assertTrue("Expected test results", results.contains("OK (4 tests)"));
+    }
+
+    @Test
+    public void run_printing() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean passed = JUnitRunner.run(getClasspath(), Utilities.newList(Printing.class.getName()), new PrintStream(output, true));
+        Assert.assertFalse("Expected test to fail", passed);
+        String results = output.toString();
+        Assert.assertTrue("Expected output of test", results.contains("printed to out"));
+        Assert.assertTrue("Expected error output of test", results.contains("printed to err"));
+        Assert.assertTrue("Expected failure", results.contains("Tests run: 1,  Failures: 1"));
+    }
+
+    @Test
+    public void run_missingClass() throws Exception {
+        try {
+            JUnitRunner.run(getClasspath(), Utilities.newList("main.MissingTest"), new PrintStream(new ByteArrayOutputStream()));
+            Assert.fail("Expected missing class to fail");
+        } catch (ClassNotFoundException e) {}
+    }
+
+    /**
+     * Prints and fails, run by run_printing but not by the suite.
+     */
+    public static class Printing {
+
+        @Test
+        public void print() {
+            System.out.println("printed to out");
+            System.err.println("printed to err");
+            Assert.fail();
+        }
+    }
+
+    /**
+     * @return the classpath to run Match's tests, without mockito.
+     */
+    public static List<String> getClasspath() throws Exception {
+        List<String> classpath = new ArrayList<String>();
+        for (Class<?> clazz : new Class<?>[] {Test.class, org.hamcrest.Matcher.class, JUnitRunnerTest.class, Utilities.class}) {
+            classpath.add(new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        }
+        return classpath;
+    }
+}
@@ -16,13 +16,23 @@
 package main;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class MatchTest {
 
@@ -30,6 +40,7 @@ public class MatchTest {
     private static final String BAR = "bar";
 
     private File mRoot;
+    private Match mMatch;
 
     @Before
     public void setUp() throws IOException {
@@ -67,6 +78,160 @@ public class MatchTest {
         Assert.assertTrue("Worker should have ended", worker.mEnded);
     }
 
+    @Test
+    public void files_future() throws Exception {
+        Match match = createMatch(null);
+        match.addFile(FOO);
+        match.addFile(BAR);
+        CompletableFuture<Void> both = CompletableFuture.allOf(match.getFile(FOO), match.getFile(BAR));
+        match.provideFile(FOO);
+        Assert.assertFalse("Files shouldn't be ready", both.isDone());
+        match.provideFile(BAR);
+        Assert.assertTrue("Files should be ready", both.isDone());
+        match.awaitFiles(Arrays.asList(FOO, BAR));
+    }
+
+    @Test
+    public void files_failedProducer() throws Exception {
+        ITarget producer = createTarget("A");
+        Mockito.when(producer.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mMatch.addFile(FOO);
+                return null;
+            }
+        }).when(producer).configure();
+        Mockito.doThrow(new RuntimeException("broken")).when(producer).build();
+        final List<String> errors = new ArrayList<String>();
+        ITarget consumer = createTarget("B", "A");
+        Mockito.when(consumer.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                try {
+                    mMatch.awaitFile(FOO);
+                } catch (RuntimeException e) {
+                    errors.add(e.getMessage());
+                }
+                return null;
+            }
+        }).when(consumer).build();
+        mMatch = createMatch(mRoot);
+        List<ITarget> targets = Arrays.asList(producer, consumer);
+        mMatch.configure(targets);
+        // The consumer fails instead of waiting forever
+        try {
+            mMatch.build(targets);
+            Assert.fail("Build should fail if a target fails");
+        } catch (RuntimeException e) {}
+        Assert.assertEquals("Wrong errors", Arrays.asList("A failed: broken"), errors);
+    }
+
+    @Test
+    public void build_failFast() throws Exception {
+        ITarget broken = createTarget("A");
+        Mockito.doThrow(new RuntimeException("broken")).when(broken).build();
+        ITarget slow = createTarget("B");
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mMatch.runCommand("sleep 60");
+                return null;
+            }
+        }).when(slow).build();
+        mMatch = createMatch(mRoot);
+        long start = System.currentTimeMillis();
+        try {
+            mMatch.build(Arrays.asList(slow, broken));
+            Assert.fail("Build should fail if a target fails");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Wrong error", "build failed, 1 of 2 targets failed", e.getMessage());
+        }
+        Assert.assertTrue("Expected running commands to be killed", System.currentTimeMillis() - start < 30000);
+    }
+
+    @Test
+    public void build_pruneOutputs() throws Exception {
+        final String stale = "./out/classes/Stale.class";
+        final String kept = "./out/classes/Kept.class";
+        File directory = new File(mRoot, "out/classes");
+        directory.mkdirs();
+        new File(mRoot, stale).createNewFile();
+        new File(mRoot, kept).createNewFile();
+        final List<String> previous = new ArrayList<String>();
+        ITarget target = createTarget("A");
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                previous.addAll(mMatch.getPreviousOutputs());
+                mMatch.addOutput(kept);
+                if (previous.isEmpty()) {
+                    mMatch.addOutput(stale);
+                }
+                return null;
+            }
+        }).when(target).build();
+        mMatch = createMatch(mRoot);
+        mMatch.build(Arrays.asList(target));
+        Assert.assertTrue("Expected outputs to be kept", new File(mRoot, stale).exists() && new File(mRoot, kept).exists());
+        // The target doesn't produce Stale.class anymore
+        mMatch.build(Arrays.asList(target));
+        Assert.assertEquals("Wrong previous outputs", 2, previous.size());
+        Assert.assertFalse("Expected stale output to be removed", new File(mRoot, stale).exists());
+        Assert.assertTrue("Expected output to be kept", new File(mRoot, kept).exists());
+        // Once the target is removed its outputs, and the directories they leave empty, go
+        mMatch.build(new ArrayList<ITarget>());
+        Assert.assertFalse("Expected outputs of removed target to be removed", directory.exists());
+    }
+
+    @Test
+    public void build_keepGoing() throws Exception {
+        ITarget producer = createTarget("A");
+        Mockito.when(producer.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mMatch.addFile(FOO);
+                return null;
+            }
+        }).when(producer).configure();
+        Mockito.doThrow(new RuntimeException("broken")).when(producer).build();
+        ITarget consumer = createTarget("B", "A");
+        Mockito.when(consumer.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mMatch.awaitFile(FOO);
+                return null;
+            }
+        }).when(consumer).build();
+        final List<String> built = new ArrayList<String>();
+        ITarget other = createTarget("D");
+        Mockito.when(other.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                // Runs a command after the failure, which would be cancelled if not keeping going
+                Thread.sleep(200);
+                mMatch.runCommand("true");
+                built.add("D");
+                return null;
+            }
+        }).when(other).build();
+        mMatch = createMatch(mRoot);
+        mMatch.setKeepGoing(true);
+        List<ITarget> targets = Arrays.asList(producer, consumer, other);
+        mMatch.configure(targets);
+        try {
+            mMatch.build(targets);
+            Assert.fail("Build should fail if a target fails");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Wrong error", "build failed, 1 of 3 targets failed", e.getMessage());
+        }
+        Assert.assertEquals("Expected independent target to be built", Arrays.asList("D"), built);
+    }
+
     @Test
     public void files_noAdd() throws Exception {
         Match match = createMatch(null);
@@ -89,6 +254,176 @@ public class MatchTest {
         Assert.assertEquals("Wrong number of files", 4, match.getAllFiles().size());
     }
 
+    @Test
+    public void select() throws Exception {
+        Match match = createMatch(null);
+        List<ITarget> targets = new ArrayList<ITarget>();
+        targets.add(createTarget("A", "B"));
+        targets.add(createTarget("B", "C"));
+        targets.add(createTarget("C"));
+        targets.add(createTarget("D", "A"));
+        match.setTargets(Arrays.asList("B"));
+        Assert.assertEquals("Wrong targets", targets.subList(1, 3), match.select(targets));
+        match.setTargets(Arrays.asList("D"));
+        Assert.assertEquals("Wrong targets", targets, match.select(targets));
+        match.setTargets(new ArrayList<String>());
+        Assert.assertEquals("Wrong targets", targets, match.select(targets));
+        match.setTargets(Arrays.asList("E"));
+        try {
+            match.select(targets);
+            Assert.fail("Match should fail if target doesn't exist");
+        } catch (Exception e) {}
+    }
+
+    @Test
+    public void lazy() throws Exception {
+        writeMatch(new File(mRoot, "a"), "FunctionFake(name = \"A\" library = [\"B\"])");
+        writeMatch(new File(mRoot, "c"), "FunctionFake(name = \"B\")");
+        File unrelated = writeMatch(new File(mRoot, "c/d"), "FunctionFake(name = \"C\")");
+        for (int i = 0; i < 2; i++) {
+            if (i == 1) {
+                // Unrelated match files shouldn't be parsed once they are indexed
+                long modified = unrelated.lastModified();
+                writeMatch(unrelated.getParentFile(), "XXXXXXXXXXXXXXXXXXXXXXXX");
+                unrelated.setLastModified(modified);
+            }
+            Match match = createMatch(mRoot);
+            match.setLazy(true);
+            match.setTargets(Arrays.asList("A"));
+            List<ITarget> targets = match.load();
+            Assert.assertEquals("Wrong number of targets", 2, targets.size());
+            Assert.assertTrue("Expected index", new File(mRoot, TargetIndex.INDEX_FILE).exists());
+        }
+    }
+
+    @Test
+    public void configure() throws Exception {
+        writeMatch(new File(mRoot, "a"), "Set(name = \"foo\" value = \"bar\")");
+        Match match = createMatch(mRoot);
+        match.load();
+        Assert.assertEquals("Wrong property", BAR, match.getProperty(FOO));
+    }
+
+    @Test
+    public void configure_duplicateProperty() throws Exception {
+        writeMatch(new File(mRoot, "a"), "Set(name = \"foo\" value = \"bar\")");
+        writeMatch(new File(mRoot, "c"), "\nSet(name = \"foo\" value = \"bar\")");
+        Match match = createMatch(mRoot);
+        match.load();
+        Assert.assertEquals("Wrong property", BAR, match.getProperty(FOO));
+
+        writeMatch(new File(mRoot, "c"), "\nSet(name = \"foo\" value = \"foo\")");
+        try {
+            createMatch(mRoot).load();
+            Assert.fail("Match should fail if two targets set a property to different values");
+        } catch (RuntimeException e) {
+            String a = new File(new File(mRoot, "a"), Match.MATCH).getPath();
+            String c = new File(new File(mRoot, "c"), Match.MATCH).getPath();
+            Assert.assertTrue("Wrong error " + e.getMessage(),
+                    e.getMessage().matches(String.format("(%s:1 and %s:2|%s:2 and %s:1) set property foo to different values",
+                            Pattern.quote(a), Pattern.quote(c), Pattern.quote(c), Pattern.quote(a))));
+        }
+    }
+
+    @Test
+    public void configure_awaitProperty() throws Exception {
+        final List<String> values = new ArrayList<String>();
+        ITarget consumer = createTarget("A");
+        Mockito.when(consumer.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                values.add(mMatch.getProperty(FOO));
+                return null;
+            }
+        }).when(consumer).configure();
+        ITarget producer = createTarget("B");
+        Mockito.when(producer.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(50);
+                mMatch.setProperty(FOO, BAR);
+                return null;
+            }
+        }).when(producer).configure();
+        mMatch = createMatch(mRoot);
+        mMatch.configure(Arrays.asList(consumer, producer));
+        Assert.assertEquals("Wrong property read while configuring", Arrays.asList(BAR), values);
+    }
+
+    @Test
+    public void configure_missingProperty() throws Exception {
+        ITarget consumer = createTarget("A");
+        Mockito.when(consumer.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mMatch.getProperty(FOO);
+                return null;
+            }
+        }).when(consumer).configure();
+        ITarget other = createTarget("B");
+        Mockito.when(other.getFile()).thenReturn(new File(mRoot, Match.MATCH));
+        mMatch = createMatch(mRoot);
+        try {
+            mMatch.configure(Arrays.asList(consumer, other));
+            Assert.fail("Match should fail if no target sets a property read while configuring");
+        } catch (RuntimeException e) {
+            Assert.assertEquals("Wrong error", "no targets set property foo", e.getMessage());
+        }
+    }
+
+    @Test
+    public void configure_conflictingFile() throws Exception {
+        writeMatch(new File(mRoot, "a"), "JavaJUnit(name = \"foo\" main_class = \"bar\")");
+        writeMatch(new File(mRoot, "c"), "JavaJUnit(name = \"foo\" main_class = \"foo\")");
+        try {
+            createMatch(mRoot).load();
+            Assert.fail("Match should fail if two targets declare the same file");
+        } catch (Exception e) {}
+    }
+
+    @Test
+    public void profile() throws Exception {
+        writeMatch(new File(mRoot, "a"), "Set(name = \"foo\" value = \"bar\")");
+        Match match = createMatch(mRoot);
+        match.setOptions(Arrays.asList("--profile", "out/profile.json"));
+        match.light();
+        String trace = new String(Files.readAllBytes(new File(mRoot, "out/profile.json").toPath()), "UTF-8");
+        for (String category : new String[] {Profile.SCAN, Profile.PARSE, Profile.CONFIGURE, Profile.CACHE, Profile.TARGET}) {
+            Assert.assertTrue("Expected " + category + " span", trace.contains("\"cat\":\"" + category + "\""));
+        }
+    }
+
+    @Test
+    public void events() throws Exception {
+        writeMatch(new File(mRoot, "a"), "Set(name = \"foo\" value = \"bar\")");
+        Match match = createMatch(mRoot);
+        match.setOptions(Arrays.asList("--events", "out/events.jsonl"));
+        match.light();
+        String events = new String(Files.readAllBytes(new File(mRoot, "out/events.jsonl").toPath()), "UTF-8");
+        for (String event : new String[] {EventStream.PHASE, EventStream.CACHE_MISS, EventStream.TARGET_STARTED, EventStream.TARGET_FINISHED}) {
+            Assert.assertTrue("Expected " + event + " event", events.contains("\"event\":\"" + event + "\""));
+        }
+        Assert.assertTrue("Expected target to succeed", events.contains("\"status\":\"ok\""));
+    }
+
+    private static File writeMatch(File directory, String content) throws IOException {
+        File file = new File(directory, Match.MATCH);
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+        return file;
+    }
+
+    private static ITarget createTarget(String name, String... dependencies) {
+        ITarget target = Mockito.mock(ITarget.class);
+        Mockito.when(target.getName()).thenReturn(name);
+        Mockito.when(target.getDependencies()).thenReturn(Arrays.asList(dependencies));
+        return target;
+    }
+
     private Match createMatch(File root) {
         Match match = new Match(root);
         match.mQuiet = true;
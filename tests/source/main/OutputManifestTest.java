@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputManifestTest {
+
+    private static final String A = "./out/java/jar/A.jar";
+    private static final String A_CLASS = "./out/java/classes/A/A.class";
+    private static final String B = "./out/java/jar/B.jar";
+    private static final String C = "./out/java/jar/C.jar";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stale() throws Exception {
+        File file = new File(folder.getRoot(), OutputManifest.MANIFEST_FILE);
+        OutputManifest manifest = new OutputManifest(file);
+        manifest.read();
+        manifest.add("A", A);
+        manifest.add("A", A_CLASS);
+        manifest.finish("A");
+        manifest.add("B", B);
+        manifest.finish("B");
+        manifest.add("C", C);
+        manifest.finish("C");
+        Assert.assertTrue("Nothing was built before", manifest.getStale(true).isEmpty());
+        manifest.write(true);
+
+        manifest = new OutputManifest(file);
+        manifest.read();
+        Assert.assertEquals("Wrong previous outputs", new HashSet<String>(Arrays.asList(A, A_CLASS)), manifest.getPrevious("A"));
+        // A's source was deleted, B failed and C wasn't built
+        manifest.add("A", A);
+        manifest.finish("A");
+        manifest.fail("B");
+        Assert.assertEquals("Wrong stale outputs", Arrays.asList(A_CLASS), manifest.getStale(false));
+        Assert.assertEquals("Removed targets' outputs are stale", new HashSet<String>(Arrays.asList(A_CLASS, C)), new HashSet<String>(manifest.getStale(true)));
+        manifest.write(false);
+
+        manifest = new OutputManifest(file);
+        manifest.read();
+        Assert.assertEquals("Wrong previous outputs", Collections.singleton(A), manifest.getPrevious("A"));
+        Assert.assertEquals("Failed targets keep their outputs", Collections.singleton(B), manifest.getPrevious("B"));
+        Assert.assertEquals("Targets not built keep their outputs", Collections.singleton(C), manifest.getPrevious("C"));
+    }
+
+    @Test
+    public void isOutput() {
+        Assert.assertTrue("Expected output", OutputManifest.isOutput(A));
+        Assert.assertTrue("Expected output", OutputManifest.isOutput("out/results/A"));
+        Assert.assertFalse("Libraries aren't outputs", OutputManifest.isOutput("/root/libraries/junit.jar"));
+        Assert.assertFalse("Output directory isn't an output", OutputManifest.isOutput("./out"));
+    }
+}
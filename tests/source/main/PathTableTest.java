@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PathTableTest {
+
+    @Test
+    public void intern() {
+        PathTable table = new PathTable();
+        String[] paths = {"./out/java/jar/Foo.jar", "./out/java/jar/Bar.jar", "/root/a/b", "/root/a/b/", "relative", ""};
+        int[] ids = new int[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            ids[i] = table.intern(paths[i]);
+        }
+        for (int i = 0; i < paths.length; i++) {
+            Assert.assertEquals("Wrong ID", ids[i], table.intern(paths[i]));
+            Assert.assertEquals("Wrong ID", ids[i], table.find(paths[i]));
+            Assert.assertEquals("Wrong path", paths[i], table.getPath(ids[i]));
+        }
+        Assert.assertEquals("Directories should be interned", table.find("./out/java"), table.intern("./out/java"));
+        Assert.assertEquals("Unknown path", -1, table.find("./out/java/jar/Baz.jar"));
+        Assert.assertEquals("Unknown path", -1, table.find("./out/java/classes"));
+    }
+
+    @Test
+    public void segments() {
+        PathTable table = new PathTable();
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < 10; j++) {
+                table.intern(String.format("./source/package%d/File%d.java", i, j));
+            }
+        }
+        // ".", "source", 1000 package names and 10 file names
+        Assert.assertEquals("Wrong number of segments", 1012, table.getSegmentCount());
+        Assert.assertEquals("Wrong number of paths", 2 + 1000 + 10000, table.size());
+        Assert.assertEquals("Wrong path", "./source/package999/File9.java", table.getPath(table.find("./source/package999/File9.java")));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProfileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void write() throws Exception {
+        Profile profile = new Profile();
+        profile.record(Profile.COMMAND, "echo \"foo\"", System.nanoTime());
+        File file = new File(folder.getRoot(), "out/profile.json");
+        profile.write(file);
+        String trace = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        Assert.assertTrue("Expected trace events", trace.startsWith("{\"traceEvents\":["));
+        Assert.assertTrue("Expected escaped span", trace.contains("{\"name\":\"echo \\\"foo\\\"\",\"cat\":\"command\",\"ph\":\"X\""));
+        Assert.assertTrue("Expected thread name", trace.contains("\"args\":{\"name\":" + Profile.quote(Thread.currentThread().getName()) + "}"));
+    }
+
+    @Test
+    public void clear() throws Exception {
+        Profile profile = new Profile();
+        profile.record(Profile.COMMAND, "foo", System.nanoTime());
+        profile.clear();
+        File file = folder.newFile();
+        profile.write(file);
+        String trace = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        Assert.assertFalse("Expected no spans", trace.contains("foo"));
+    }
+
+    @Test
+    public void quote() {
+        Assert.assertEquals("Wrong quoting", "\"a\\\\b\\n\\tc\\u0001\"", Profile.quote("a\\b\n\tc\u0001"));
+    }
+}
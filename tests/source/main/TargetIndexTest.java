@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Stuart Scott
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TargetIndexTest {
+
+    private File mRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = MatchTest.createFileStructure();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        MatchTest.deleteFileStructure(mRoot);
+    }
+
+    @Test
+    public void index() throws Exception {
+        File b = new File(mRoot, "a/b");
+        File bar = new File(mRoot, "bar");
+        File indexFile = new File(mRoot, TargetIndex.INDEX_FILE);
+        TargetIndex index = new TargetIndex(indexFile);
+        index.read();
+        Assert.assertFalse("Nothing should be indexed", index.isCurrent(b));
+        index.put(b, Arrays.asList("Foo", "Bar"));
+        index.put(bar, new ArrayList<String>());
+        index.write();
+
+        index = new TargetIndex(indexFile);
+        index.read();
+        Assert.assertTrue("Expected file to be indexed", index.isCurrent(b));
+        Assert.assertTrue("Expected file to be indexed", index.isCurrent(bar));
+        Map<String, File> files = index.getFiles();
+        Assert.assertEquals("Wrong number of targets", 2, files.size());
+        Assert.assertEquals("Wrong file", b, files.get("Foo"));
+        Assert.assertEquals("Wrong file", b, files.get("Bar"));
+
+        b.setLastModified(b.lastModified() - 10000);
+        Assert.assertFalse("Changed file shouldn't be current", index.isCurrent(b));
+        List<File> remaining = new ArrayList<File>();
+        remaining.add(bar);
+        index.retain(remaining);
+        Assert.assertTrue("Expected no targets", index.getFiles().isEmpty());
+    }
+}